@@ -0,0 +1,250 @@
+package uebung_parallelisierung.sequentiell;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * Runs the depth-first search of {@link Solver#solve()} asynchronously with a time budget and publishes
+ * its progress while it runs, including the prefix of the path that is already certain to be part
+ * of the solution, so that consumers can start rendering or validating the route before the search ends.
+ * <p>
+ * A prefix of the current path is confirmed once no branch remains to backtrack to before its
+ * last cell: the search then only ever continues or shortens the path after that cell. Since the
+ * branches saved on the backtrack stack lie deeper on the path the higher they are on the stack,
+ * the confirmed prefix ends at the branching point of the bottom entry (or just before the current cell
+ * if the stack is empty), and it only grows. This assumes that end can be reached at all (see
+ * {@link Connectivity}); otherwise the search ends without solution after publishing a confirmed prefix.
+ * <p>
+ * Usage: subscribe to {@link #progress()}, then call {@link #solveAsync()}. Cancelling the returned
+ * future stops the search. If the time budget runs out, the future completes with the path searched so
+ * far (from start, but not reaching end).
+ */
+final class AsyncSolver {
+
+    // Check the time budget and publish progress every this many steps of the search:
+    private static final int STEPS_PER_CHECK = 1 << 14;
+
+    private static final long DEFAULT_TIME_BUDGET_MS = 10000;
+
+    /**
+     * Progress of the search, published while it runs.
+     */
+    static final class Progress {
+        final long visitedCells;
+        final int confirmedOffset;       // index in the solution path of the first cell of confirmedCells
+        final Point[] confirmedCells;    // cells of the solution path confirmed since the previous Progress
+
+        Progress(long visitedCells, int confirmedOffset, Point[] confirmedCells) {
+            this.visitedCells = visitedCells;
+            this.confirmedOffset = confirmedOffset;
+            this.confirmedCells = confirmedCells;
+        }
+
+        /**
+         * @return Returns the number of cells from start on that are confirmed to be on the solution path
+         */
+        int confirmedLength() {
+            return confirmedOffset + confirmedCells.length;
+        }
+    }
+
+    /**
+     * Result of a search.
+     */
+    static final class Result {
+        final Point[] path;        // the solution, or the best-effort partial path if not complete; null if no solution exists
+        final boolean complete;    // whether the search ended (rather than running out of time)
+
+        Result(Point[] path, boolean complete) {
+            this.path = path;
+            this.complete = complete;
+        }
+    }
+
+    private final Labyrinth labyrinth;
+    private final Duration timeBudget;
+    private final Executor executor;
+    private final SubmissionPublisher<Progress> publisher;
+
+    AsyncSolver(Labyrinth labyrinth) {
+        this(labyrinth, Duration.ofMillis(DEFAULT_TIME_BUDGET_MS), ForkJoinPool.commonPool());
+    }
+
+    AsyncSolver(Labyrinth labyrinth, Duration timeBudget, Executor executor) {
+        this.labyrinth = labyrinth;
+        this.timeBudget = timeBudget;
+        this.executor = executor;
+        publisher = new SubmissionPublisher<>();
+    }
+
+    /**
+     * @return Returns the publisher of the progress of the search; it is closed when the search ends
+     */
+    Flow.Publisher<Progress> progress() {
+        return publisher;
+    }
+
+    /**
+     * Start the search (only once per AsyncSolver).
+     * @return Returns a future for the result of the search
+     */
+    CompletableFuture<Result> solveAsync() {
+        CompletableFuture<Result> future = new CompletableFuture<>();
+        long deadline = System.nanoTime() + timeBudget.toNanos();
+        executor.execute(() -> {
+            try {
+                Result result = search(future, deadline);
+                if (result != null)
+                    future.complete(result);
+                publisher.close();
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+                publisher.closeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * @return Returns the result, or null if <code>future</code> was completed (e.g. cancelled) by someone else
+     */
+    private Result search(CompletableFuture<Result> future, long deadline) {
+        Point current = labyrinth.getStart();
+        ArrayList<Point> pathSoFar = new ArrayList<Point>();  // Path from start to just before current
+        boolean[][] visited = new boolean[labyrinth.getWidth()][labyrinth.getHeight()]; // initially all false
+        ArrayDeque<PointAndDirection> backtrackStack = new ArrayDeque<PointAndDirection>();
+        // For each entry of backtrackStack, from bottom to top: index of its branching point in pathSoFar
+        int[] branchIndex = new int[16];
+        int published = 0;  // number of cells of pathSoFar published as confirmed
+        long visitedCells = 0;
+
+        while (!labyrinth.isDestination(current)) {
+            Point next = null;
+            visited[current.getX()][current.getY()] = true;
+            ++visitedCells;
+
+            if (visitedCells % STEPS_PER_CHECK == 0) {
+                if (future.isDone())
+                    return null;
+                if (System.nanoTime() - deadline > 0) {
+                    pathSoFar.add(current);
+                    return new Result(pathSoFar.toArray(new Point[0]), false);
+                }
+                int confirmed = backtrackStack.isEmpty() ? pathSoFar.size() : branchIndex[0] + 1;
+                published = publish(pathSoFar, published, confirmed, visitedCells, false);
+            }
+
+            // Use first unvisited neighbor as next cell, push others on the backtrack stack:
+            for (Direction directionToNeighbor: Direction.values()) {
+                Point neighbor = current.getNeighbor(directionToNeighbor);
+                if (   labyrinth.hasPassage(current, directionToNeighbor)
+                    && !visited[neighbor.getX()][neighbor.getY()]
+                    && (   !labyrinth.isBlindAlley(neighbor, directionToNeighbor.opposite)
+                        || labyrinth.isDestination(neighbor))) {
+                    if (next == null) // 1st unvisited neighbor
+                        next = neighbor;
+                    else {
+                        // 2nd or higher unvisited neighbor: Save neighbor as starting cell for a later backtracking
+                        if (backtrackStack.size() == branchIndex.length)
+                            branchIndex = Arrays.copyOf(branchIndex, 2*branchIndex.length);
+                        branchIndex[backtrackStack.size()] = pathSoFar.size(); // current will be added there
+                        backtrackStack.push(new PointAndDirection(neighbor, directionToNeighbor.opposite));
+                    }
+                }
+            }
+            // Advance to next cell, if any:
+            if (next != null) {
+                pathSoFar.add(current);
+                current = next;
+            } else {
+                // current has no unvisited neighbor: Backtrack, if possible
+                if (backtrackStack.isEmpty())
+                    return new Result(null, true); // No more backtracking available: No solution exists
+
+                // Backtrack: Continue with cell saved at latest branching point, removing the dead end after it:
+                PointAndDirection pd = backtrackStack.pop();
+                current = pd.getPoint();
+                int branchingPointIndex = branchIndex[backtrackStack.size()];
+                pathSoFar.subList(branchingPointIndex + 1, pathSoFar.size()).clear();
+            }
+        }
+        pathSoFar.add(current);
+        publish(pathSoFar, published, pathSoFar.size(), visitedCells, true);
+        return new Result(pathSoFar.toArray(new Point[0]), true);
+    }
+
+    /**
+     * Publish the cells of <code>pathSoFar</code> from index <code>published</code> up to <code>confirmed</code>.
+     * Unless <code>last</code>, this does not block the search: if a subscriber cannot take them now, they are
+     * offered again next time.
+     * @return Returns the new number of published cells
+     */
+    private int publish(ArrayList<Point> pathSoFar, int published, int confirmed, long visitedCells, boolean last) {
+        Point[] cells = pathSoFar.subList(published, Math.max(published, confirmed)).toArray(new Point[0]);
+        Progress progress = new Progress(visitedCells, published, cells);
+        if (last)
+            publisher.submit(progress);
+        else if (publisher.offer(progress, null) < 0)
+            return published;  // dropped by a saturated subscriber
+        return published + cells.length;
+    }
+
+    /**
+     * @param args Same as for {@link Solver#main(String[])}. The labyrinth is solved asynchronously, printing
+     * the progress as it is published, and the result is checked.
+     */
+    public static void main(String[] args) {
+        Labyrinth labyrinth = Solver.makeOrLoadLabyrinth(args);
+        if (labyrinth == null)
+            return;
+        AsyncSolver solver = new AsyncSolver(labyrinth);
+        solver.progress().subscribe(new Flow.Subscriber<Progress>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(Progress progress) {
+                System.out.println("Visited " + progress.visitedCells + " cells, first " + progress.confirmedLength() +
+                        " cells of solution confirmed.");
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                System.out.println(e);
+            }
+
+            @Override
+            public void onComplete() {
+                System.out.println("Search finished.");
+            }
+        });
+
+        long startTime = System.currentTimeMillis();
+        Result result = solver.solveAsync().join();
+        long endTime = System.currentTimeMillis();
+        if (!result.complete)
+            System.out.println("Time budget exhausted after " + (endTime - startTime) + "ms, partial path of length " +
+                    result.path.length + ".");
+        else if (result.path == null)
+            System.out.println("No solution exists.");
+        else {
+            System.out.println("Computed solution of length " + result.path.length + " in " + (endTime - startTime) + "ms.");
+            if (labyrinth.checkSolution(result.path))
+                System.out.println("Solution correct :-)");
+            else
+                System.out.println("Solution incorrect :-(");
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package uebung_parallelisierung.sequentiell;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Arrays;
+
+/**
+ * Worker process of {@link PartitionedSolver}: owns one horizontal band of rows of a labyrinth,
+ * searches it on request of the coordinator and reports the passages by which the search leaves the
+ * band. Run as <code>java BandWorker port</code>; it connects to the coordinator at that port on the
+ * loopback interface and serves its requests until told to quit.
+ * <p>
+ * Requests (each answered before the next one is read):
+ * <ul>
+ * <li>INIT fileName y0 y1: the band consists of rows y0 to y1-1 of the labyrinth in the
+ *     {@link PassageFile} <code>fileName</code>, of which the worker reads only the header and these rows.</li>
+ * <li>SEEDS n (x y move)*n: continue the search from the n given cells, each entered by the given move
+ *     (the ordinal of a Direction, or START for the start cell). Answer: whether end has been reached,
+ *     the number of cells newly visited, and the cells just outside the band to which passages lead from
+ *     the newly visited cells, each with the move that enters it.</li>
+ * <li>TRACE x y: follow the moves by which the search entered the cells back from (x, y) until start or
+ *     until leaving the band. Answer: those moves in forward order (the first one entering the band, unless
+ *     start was reached), then START if start was reached or else again the first move.</li>
+ * <li>RESET: forget the search so far.</li>
+ * <li>QUIT.</li>
+ * </ul>
+ */
+final class BandWorker {
+
+    static final int INIT = 1;
+    static final int SEEDS = 2;
+    static final int TRACE = 3;
+    static final int RESET = 4;
+    static final int QUIT = 5;
+
+    static final int START = -1;  // "move" by which the start cell is entered
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private int width;
+    private int y0;          // first row of the band
+    private int y1;          // first row after the band
+    private int endX;
+    private int endY;
+    private byte[] passages; // passage bits of cell (x, y) at (y-y0)*width+x
+    private byte[] entered;  // 0 if not visited yet, else 2 + move by which the cell was entered (so 1 for start)
+    private boolean reachedEnd = false;
+
+    private void init(DataInputStream in) throws IOException {
+        PassageFile file = new PassageFile(in.readUTF());
+        y0 = in.readInt();
+        y1 = in.readInt();
+        width = file.getWidth();
+        endX = file.getEnd().getX();
+        endY = file.getEnd().getY();
+        passages = file.readRows(y0, y1);
+        entered = new byte[passages.length];
+    }
+
+    private void search(DataInputStream in, DataOutputStream out) throws IOException {
+        int nSeeds = in.readInt();
+        int[] queue = new int[Math.max(nSeeds, 16)];
+        int tail = 0;
+        for (int s = 0; s < nSeeds; ++s) {
+            int x = in.readInt();
+            int y = in.readInt();
+            int move = in.readInt();
+            int cell = (y-y0)*width + x;
+            if (entered[cell] == 0) {
+                entered[cell] = (byte)(move + 2);
+                queue[tail++] = cell;
+            }
+        }
+
+        // Breadth-first search inside the band, collecting the passages that leave it:
+        int[] crossings = new int[48];
+        int nCrossings = 0;
+        int head = 0;
+        while (head < tail) {
+            int cell = queue[head++];
+            int x = cell % width;
+            int y = y0 + cell / width;
+            if (x == endX && y == endY)
+                reachedEnd = true;
+            for (Direction dir : DIRECTIONS) {
+                if ((passages[cell] & dir.bit) == 0)
+                    continue;
+                int nx = x + dir.dx;
+                int ny = y + dir.dy;
+                if (nx < 0 || nx >= width)
+                    continue;
+                if (ny < y0 || ny >= y1) {
+                    if (nCrossings + 3 > crossings.length)
+                        crossings = Arrays.copyOf(crossings, 2*crossings.length);
+                    crossings[nCrossings++] = nx;
+                    crossings[nCrossings++] = ny;
+                    crossings[nCrossings++] = dir.ordinal();
+                    continue;
+                }
+                int neighbor = (ny-y0)*width + nx;
+                if (entered[neighbor] == 0) {
+                    entered[neighbor] = (byte)(dir.ordinal() + 2);
+                    if (tail == queue.length)
+                        queue = Arrays.copyOf(queue, 2*queue.length);
+                    queue[tail++] = neighbor;
+                }
+            }
+        }
+
+        out.writeBoolean(reachedEnd);
+        out.writeInt(tail);
+        out.writeInt(nCrossings / 3);
+        for (int i = 0; i < nCrossings; ++i)
+            out.writeInt(crossings[i]);
+        out.flush();
+    }
+
+    private void trace(DataInputStream in, DataOutputStream out) throws IOException {
+        int x = in.readInt();
+        int y = in.readInt();
+        byte[] moves = new byte[16];
+        int nMoves = 0;
+        int move;
+        while (true) {
+            move = entered[(y-y0)*width + x] - 2;
+            if (move == START)
+                break;
+            if (nMoves == moves.length)
+                moves = Arrays.copyOf(moves, 2*moves.length);
+            moves[nMoves++] = (byte)move;
+            int px = x - DIRECTIONS[move].dx;
+            int py = y - DIRECTIONS[move].dy;
+            if (py < y0 || py >= y1)
+                break;  // entered from another band
+            x = px;
+            y = py;
+        }
+        out.writeInt(nMoves);
+        for (int i = nMoves - 1; i >= 0; --i)
+            out.writeByte(moves[i]);
+        out.writeInt(move);
+        out.flush();
+    }
+
+    /**
+     * @param args The port of the coordinator on the loopback interface
+     */
+    public static void main(String[] args) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0]))) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            BandWorker worker = new BandWorker();
+            while (true) {
+                switch (in.readInt()) {
+                    case INIT:
+                        worker.init(in);
+                        break;
+                    case SEEDS:
+                        worker.search(in, out);
+                        break;
+                    case TRACE:
+                        worker.trace(in, out);
+                        break;
+                    case RESET:
+                        Arrays.fill(worker.entered, (byte)0);
+                        worker.reachedEnd = false;
+                        break;
+                    case QUIT:
+                        return;
+                    default:
+                        throw new IOException("Unknown request");
+                }
+            }
+        }
+    }
+}
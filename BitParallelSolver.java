@@ -0,0 +1,157 @@
+package uebung_parallelisierung.sequentiell;
+
+import java.util.Arrays;
+
+/**
+ * Solves a labyrinth by a breadth-first flood fill that works on whole rows of cells at once:
+ * the frontier and the visited cells are bitsets per row (see {@link PassageBitPlanes}),
+ * and one step moves the complete frontier one cell further with shifts (east/west within a row)
+ * and masks (north/south between rows), 64 cells per word operation. Rows of one step are
+ * independent of each other and are computed in parallel when there are enough of them.
+ * Once the end is reached, the path is recovered backwards along the distance layers.
+ */
+final public class BitParallelSolver {
+
+    private static final int N_RUNS_HALF = 5;  // #runs will be 2*N_RUNS_HALF + 1
+
+    private final Labyrinth labyrinth;
+
+    public BitParallelSolver(Labyrinth labyrinth) {
+        this.labyrinth = labyrinth;
+    }
+
+    /**
+     * @return Returns a shortest path through the labyrinth from start to end as an array, or null if no solution exists
+     */
+    public Point[] solve() {
+
+        // Initialize the search state: This must be done here to be part of the timing measurement
+
+        PassageBitPlanes planes = new PassageBitPlanes(labyrinth);
+        int width = planes.width;
+        int height = planes.height;
+        long[][] visited = new long[height][planes.words];  // initially all 0
+        int[] layer = new int[width*height]; // for visited cells (index y*width+x): step in which it was reached
+
+        Point start = labyrinth.getStart();
+        Point end = labyrinth.getEnd();
+        visited[start.getY()][start.getX() >>> 6] |= 1L << start.getX();
+
+        // Search:
+
+        int step = planes.floodFill(start.getX(), start.getY(),
+                () -> PassageBitPlanes.isSet(visited[end.getY()], end.getX()),
+                (frontier, next, y, fromWord, toWord, currentStep) ->
+                        advanceRow(planes, frontier, next, visited, layer, y, fromWord, toWord, currentStep));
+        if (!PassageBitPlanes.isSet(visited[end.getY()], end.getX()))
+            return null; // Frontier is empty, but end not reached: No solution exists
+
+        // Recover the path backwards from end: the predecessor of a cell reached in step k
+        // is a neighbor reached in step k-1 with a passage to it.
+        Point[] path = new Point[step + 1];
+        Point current = end;
+        for (int k = step; k > 0; --k) {
+            path[k] = current;
+            for (Direction dir : Direction.values()) {
+                Point neighbor = current.getNeighbor(dir);
+                int nx = neighbor.getX();
+                int ny = neighbor.getY();
+                if (labyrinth.contains(neighbor)
+                        && PassageBitPlanes.isSet(visited[ny], nx)
+                        && layer[ny*width + nx] == k-1
+                        && planes.hasPassage(nx, ny, dir.opposite)) {
+                    current = neighbor;
+                    break;
+                }
+            }
+        }
+        path[0] = current;
+        return path;
+    }
+
+    /**
+     * Compute words <code>fromWord</code> to <code>toWord</code> of row <code>y</code> of the next frontier from
+     * the rows <code>y-1</code>, <code>y</code> and <code>y+1</code> of the current frontier, mark its cells as
+     * visited in <code>step</code>.
+     * Writes only row <code>y</code> of <code>next</code> and <code>visited</code> and the cells of
+     * row <code>y</code> in <code>layer</code>, so different rows may be advanced concurrently.
+     * @return Returns whether the row of the next frontier is nonempty
+     */
+    private static boolean advanceRow(PassageBitPlanes planes, long[][] frontier, long[][] next,
+                                      long[][] visited, int[] layer, int y, int fromWord, int toWord, int step) {
+        long[] current = frontier[y];
+        long[] east = planes.row(Direction.E, y);
+        long[] west = planes.row(Direction.W, y);
+        long[] above = y > 0 ? frontier[y-1] : null;
+        long[] southFromAbove = y > 0 ? planes.row(Direction.S, y-1) : null;
+        long[] below = y+1 < planes.height ? frontier[y+1] : null;
+        long[] northFromBelow = y+1 < planes.height ? planes.row(Direction.N, y+1) : null;
+        long[] nextRow = next[y];
+        long[] visitedRow = visited[y];
+        boolean nonempty = false;
+
+        for (int i = fromWord; i <= toWord; ++i) {
+            long toEast = PassageBitPlanes.shiftEast(current[i] & east[i], i > 0 ? current[i-1] & east[i-1] : 0L);
+            long toWest = PassageBitPlanes.shiftWest(current[i] & west[i],
+                                                     i+1 < planes.words ? current[i+1] & west[i+1] : 0L);
+            long reached = toEast | toWest;
+            if (above != null)
+                reached |= above[i] & southFromAbove[i];
+            if (below != null)
+                reached |= below[i] & northFromBelow[i];
+            reached &= ~visitedRow[i];
+            if (i == planes.words - 1)
+                reached &= planes.lastWordMask;
+
+            nextRow[i] = reached;
+            if (reached != 0) {
+                nonempty = true;
+                visitedRow[i] |= reached;
+                int rowBase = y*planes.width + (i << 6);
+                for (long bits = reached; bits != 0; bits &= bits - 1)
+                    layer[rowBase + Long.numberOfTrailingZeros(bits)] = step;
+            }
+        }
+        return nonempty;
+    }
+
+    /**
+     * @param args Same as for {@link Solver#main(String[])}. The labyrinth is solved with this solver and
+     * with the sequential depth-first {@link Solver} a certain number of times, and the median run times are printed.
+     */
+    public static void main(String[] args) {
+        Labyrinth labyrinth = Solver.makeOrLoadLabyrinth(args);
+        if (labyrinth == null)
+            return;
+        long[] runTimes = new long[2*N_RUNS_HALF + 1];
+        long[] runTimesSequential = new long[2*N_RUNS_HALF + 1];
+
+        for (int run = 0; run < 2*N_RUNS_HALF + 1; ++run) {
+            long startTime = System.currentTimeMillis();
+            Point[] solution = new BitParallelSolver(labyrinth).solve();
+            long endTime = System.currentTimeMillis();
+            runTimes[run] = endTime - startTime;
+
+            startTime = System.currentTimeMillis();
+            new Solver(labyrinth).solve();
+            endTime = System.currentTimeMillis();
+            runTimesSequential[run] = endTime - startTime;
+
+            if (solution == null)
+                System.out.println("No solution exists.");
+            else {
+                System.out.println("Computed bit-parallel solution of length " + solution.length + " to labyrinth of size " +
+                        labyrinth.getWidth() + "x" + labyrinth.getHeight() + " in " + runTimes[run] + "ms" +
+                        " (sequential: " + runTimesSequential[run] + "ms).");
+                if (labyrinth.checkSolution(solution))
+                    System.out.println("Solution correct :-)");
+                else
+                    System.out.println("Solution incorrect :-(");
+            }
+        }
+        Arrays.sort(runTimes);
+        Arrays.sort(runTimesSequential);
+        System.out.println("Median run time was " + runTimes[N_RUNS_HALF] + " ms" +
+                " (sequential: " + runTimesSequential[N_RUNS_HALF] + " ms).");
+    }
+}
@@ -0,0 +1,221 @@
+package uebung_parallelisierung.sequentiell;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A path through a labyrinth, stored as its first cell plus 2 bits per move
+ * (the ordinal of the {@link Direction} to the next cell), i.e. 32 moves per <code>long</code>
+ * instead of one {@link Point} object per cell. The cells are produced lazily when iterating.
+ */
+final class CompactPath implements Iterable<Point>, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    // When reading a path, space for at most this many moves is allocated before they have been read:
+    private static final int INITIAL_READ_MOVES = 1 << 20;
+
+    private final Point start;
+    private long[] moves;  // move i in bits 2*(i%32) and 2*(i%32)+1 of moves[i/32]
+    private int nMoves;
+    private int endX, endY; // last cell of the path
+
+    CompactPath(Point start) {
+        this(start, 32);
+    }
+
+    CompactPath(Point start, int expectedMoves) {
+        this.start = start;
+        moves = new long[Math.max(1, (int)(((long)expectedMoves + 31) >>> 5))];
+        endX = start.getX();
+        endY = start.getY();
+    }
+
+    /**
+     * @return Returns the path through the cells in <code>points</code>, each of which must be a neighbor of the previous one
+     */
+    static CompactPath fromPoints(Point[] points) {
+        CompactPath path = new CompactPath(points[0], points.length - 1);
+        for (int i = 1; i < points.length; ++i) {
+            Direction move = directionBetween(points[i-1], points[i]);
+            if (move == null)
+                throw new IllegalArgumentException(points[i] + " is not a neighbor of " + points[i-1]);
+            path.add(move);
+        }
+        return path;
+    }
+
+    private static Direction directionBetween(Point from, Point to) {
+        for (Direction dir : DIRECTIONS) {
+            if (from.getX() + dir.dx == to.getX() && from.getY() + dir.dy == to.getY())
+                return dir;
+        }
+        return null;
+    }
+
+    /**
+     * Extend the path by one cell, the neighbor of its last cell in direction <code>move</code>.
+     */
+    void add(Direction move) {
+        if (nMoves == (moves.length << 5))
+            moves = Arrays.copyOf(moves, 2*moves.length);
+        moves[nMoves >>> 5] |= (long)move.ordinal() << ((nMoves & 31) << 1);
+        ++nMoves;
+        endX += move.dx;
+        endY += move.dy;
+    }
+
+    /**
+     * Remove the last cell of the path (which must have at least two cells).
+     */
+    void removeLast() {
+        Direction move = move(nMoves - 1);
+        --nMoves;
+        moves[nMoves >>> 5] &= ~(3L << ((nMoves & 31) << 1));
+        endX -= move.dx;
+        endY -= move.dy;
+    }
+
+    Direction move(int i) {
+        return DIRECTIONS[(int)(moves[i >>> 5] >>> ((i & 31) << 1)) & 3];
+    }
+
+    int moveCount() {
+        return nMoves;
+    }
+
+    /**
+     * @return Returns the number of cells of the path, including start and end
+     */
+    int length() {
+        return nMoves + 1;
+    }
+
+    Point getStart() {
+        return start;
+    }
+
+    Point getEnd() {
+        return new Point(endX, endY);
+    }
+
+    Point[] toArray() {
+        Point[] points = new Point[length()];
+        int i = 0;
+        for (Point p : this)
+            points[i++] = p;
+        return points;
+    }
+
+    @Override
+    public Iterator<Point> iterator() {
+        return new Iterator<Point>() {
+            private int i = -1; // number of moves made so far, -1 before start
+            private Point current;
+
+            @Override
+            public boolean hasNext() {
+                return i < nMoves;
+            }
+
+            @Override
+            public Point next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                current = i < 0 ? start : current.getNeighbor(move(i));
+                ++i;
+                return current;
+            }
+        };
+    }
+
+    /**
+     * Write the path in binary form (start, number of moves, packed moves) to <code>out</code>
+     * (which should be buffered).
+     */
+    void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(start.getX());
+        data.writeInt(start.getY());
+        data.writeInt(nMoves);
+        for (int w = 0; w < (nMoves + 31) >>> 5; ++w)
+            data.writeLong(moves[w]);
+        data.flush();
+    }
+
+    /**
+     * Read a path as written by {@link #write(OutputStream)} from <code>in</code> (which should be buffered),
+     * consuming exactly its bytes, so that further data may follow it in the stream.
+     * @return Returns the path read
+     */
+    static CompactPath read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        Point start = new Point(data.readInt(), data.readInt());
+        int nMoves = data.readInt();
+        if (nMoves < 0)
+            throw new IOException("Invalid number of moves " + nMoves);
+        // nMoves is not trusted before the moves have actually been read, so allocate as they arrive:
+        CompactPath path = new CompactPath(start, Math.min(nMoves, INITIAL_READ_MOVES));
+        int nWords = (int)(((long)nMoves + 31) >>> 5);
+        for (int w = 0; w < nWords; ++w) {
+            if (w == path.moves.length)
+                path.moves = Arrays.copyOf(path.moves, (int)Math.min(nWords, 2L*w));
+            path.moves[w] = data.readLong();
+        }
+        if ((nMoves & 31) != 0)
+            path.moves[nWords - 1] &= (1L << ((nMoves & 31) << 1)) - 1; // moves beyond the path must be 0
+        path.nMoves = nMoves;
+        for (int i = 0; i < nMoves; ++i) {
+            Direction move = path.move(i);
+            path.endX += move.dx;
+            path.endY += move.dy;
+        }
+        return path;
+    }
+
+    void save(String fileName) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(fileName))) {
+            write(out);
+        }
+    }
+
+    static CompactPath load(String fileName) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(fileName))) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Write the cells of the path as text, in the format of {@link Point#toString()}, to <code>out</code>
+     * (which should be buffered).
+     */
+    void writeText(Writer out) throws IOException {
+        int x = start.getX();
+        int y = start.getY();
+        for (int i = -1; i < nMoves; ++i) {
+            if (i >= 0) {
+                Direction move = move(i);
+                x += move.dx;
+                y += move.dy;
+            }
+            out.write('(');
+            out.write(Integer.toString(x));
+            out.write(", ");
+            out.write(Integer.toString(y));
+            out.write(')');
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package uebung_parallelisierung.sequentiell;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/**
+ * The connected components of the cells of a labyrinth, where two neighboring cells are connected
+ * if there is a passage between them in at least one direction. They are computed with a concurrent
+ * union-find over all passages: tiles of the grid are processed in parallel, and unions link roots
+ * with compare-and-set instead of locks (always the root with the higher index below the other, so
+ * no cycles can arise).
+ * If start and end lie in different components, no path from start to end exists; this is known
+ * without searching all cells reachable from start. For labyrinths with one-way passages the converse
+ * does not hold, i.e. cells in the same component need not be reachable from each other.
+ * Components are cached per labyrinth (see {@link #of(Labyrinth)}); {@link Solver} uses them
+ * if constructed with <code>checkConnectivity</code>.
+ */
+final class Connectivity {
+
+    private static final int TILE_SIZE = 64;
+
+    private static final int N_RUNS_HALF = 5;  // #runs will be 2*N_RUNS_HALF + 1
+
+    // Components of labyrinths computed so far (Connectivity holds no reference to its labyrinth,
+    // so entries disappear together with their labyrinth):
+    private static final Map<Labyrinth, Connectivity> cache = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final int width;
+    private final int[] component;  // for cell y*width+x: the smallest cell index in its component
+    private final int startCell;
+    private final int endCell;
+
+    /**
+     * @return Returns the components of <code>labyrinth</code>, computing them only on the first call for it
+     */
+    static Connectivity of(Labyrinth labyrinth) {
+        Connectivity connectivity = cache.get(labyrinth);
+        if (connectivity == null) {
+            connectivity = new Connectivity(labyrinth);
+            cache.put(labyrinth, connectivity);
+        }
+        return connectivity;
+    }
+
+    Connectivity(Labyrinth labyrinth) {
+        width = labyrinth.getWidth();
+        int height = labyrinth.getHeight();
+        startCell = labyrinth.getStart().getY()*width + labyrinth.getStart().getX();
+        endCell = labyrinth.getEnd().getY()*width + labyrinth.getEnd().getX();
+
+        AtomicIntegerArray parent = new AtomicIntegerArray(width*height);
+        IntStream.range(0, width*height).parallel().forEach(i -> parent.set(i, i));
+
+        // Union each cell with its east and south neighbor if there is a passage between them, tile by tile:
+        int tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        int tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        IntStream.range(0, tilesX*tilesY).parallel().forEach(t -> {
+            int x0 = (t % tilesX)*TILE_SIZE;
+            int y0 = (t / tilesX)*TILE_SIZE;
+            for (int y = y0; y < Math.min(height, y0 + TILE_SIZE); ++y) {
+                for (int x = x0; x < Math.min(width, x0 + TILE_SIZE); ++x) {
+                    int cell = labyrinth.passagesAt(x, y);
+                    if (x+1 < width && ((cell & Direction.E.bit) != 0
+                                        || (labyrinth.passagesAt(x+1, y) & Direction.W.bit) != 0))
+                        union(parent, y*width + x, y*width + x+1);
+                    if (y+1 < height && ((cell & Direction.S.bit) != 0
+                                         || (labyrinth.passagesAt(x, y+1) & Direction.N.bit) != 0))
+                        union(parent, y*width + x, (y+1)*width + x);
+                }
+            }
+        });
+
+        // Now that all unions are done, the roots no longer change:
+        component = new int[width*height];
+        IntStream.range(0, width*height).parallel().forEach(i -> component[i] = find(parent, i));
+    }
+
+    /**
+     * @return Returns the root of <code>i</code>, halving the path to it on the way
+     */
+    private static int find(AtomicIntegerArray parent, int i) {
+        int p = parent.get(i);
+        while (p != i) {
+            int grandparent = parent.get(p);
+            parent.compareAndSet(i, p, grandparent); // may fail if another thread changed it; that is harmless
+            // Continue with the grandparent, so every other cell on the path is linked one level up:
+            i = grandparent;
+            p = parent.get(i);
+        }
+        return i;
+    }
+
+    private static void union(AtomicIntegerArray parent, int a, int b) {
+        while (true) {
+            int rootA = find(parent, a);
+            int rootB = find(parent, b);
+            if (rootA == rootB)
+                return;
+            int higher = Math.max(rootA, rootB);
+            int lower = Math.min(rootA, rootB);
+            // Succeeds only if higher is still a root; otherwise retry with the new roots:
+            if (parent.compareAndSet(higher, higher, lower))
+                return;
+        }
+    }
+
+    boolean connected(Point a, Point b) {
+        return component[a.getY()*width + a.getX()] == component[b.getY()*width + b.getX()];
+    }
+
+    /**
+     * @return Returns false if there is certainly no path from start to end
+     */
+    boolean startConnectedToEnd() {
+        return component[startCell] == component[endCell];
+    }
+
+    int componentCount() {
+        return (int)IntStream.range(0, component.length).parallel().filter(i -> component[i] == i).count();
+    }
+
+    /**
+     * @param args Same as for {@link Solver#main(String[])}. The components of the labyrinth are computed a
+     * certain number of times, and the median run time and whether start and end are connected are printed.
+     */
+    public static void main(String[] args) {
+        Labyrinth labyrinth = Solver.makeOrLoadLabyrinth(args);
+        if (labyrinth == null)
+            return;
+        long[] runTimes = new long[2*N_RUNS_HALF + 1];
+        Connectivity connectivity = null;
+        for (int run = 0; run < 2*N_RUNS_HALF + 1; ++run) {
+            long startTime = System.currentTimeMillis();
+            connectivity = new Connectivity(labyrinth);
+            long endTime = System.currentTimeMillis();
+            runTimes[run] = endTime - startTime;
+        }
+        Arrays.sort(runTimes);
+        System.out.println("Labyrinth of size " + labyrinth.getWidth() + "x" + labyrinth.getHeight() + " has " +
+                connectivity.componentCount() + " component(s); start and end are " +
+                (connectivity.startConnectedToEnd() ? "" : "not ") + "connected.");
+        System.out.println("Median run time was " + runTimes[N_RUNS_HALF] + " ms.");
+    }
+}
@@ -0,0 +1,179 @@
+package uebung_parallelisierung.sequentiell;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * For every cell of a labyrinth, the first move of a shortest path from that cell to the end,
+ * stored as 2 bits per cell (the ordinal of the {@link Direction}). The field is computed once by a
+ * breadth-first search backwards from the end; afterwards the route from any starting cell is found
+ * by following the moves, in time proportional to its length and without search.
+ * The search is sequential: the row-at-once flood fill of {@link BitParallelSolver} pays per step and
+ * per frontier row, and the thin frontiers of labyrinths (hundreds of thousands of steps with a few cells
+ * each) made it several times slower than a plain queue. To avoid repeating the search, {@link #save}
+ * writes the field and its labyrinth to one file.
+ */
+final class DistanceField implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final int N_RUNS_HALF = 5;  // #runs will be 2*N_RUNS_HALF + 1
+    private static final int N_RANDOM_QUERIES = 1000;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final Labyrinth labyrinth;
+    private final long[][] reachable;  // [y][x/64]: bit x%64 is set iff the end can be reached from (x, y)
+    private final long[][] moves;      // [y][x/32]: bits 2*(x%32) and 2*(x%32)+1 hold the first move from (x, y)
+    private final int maxDistance;     // distance to the end from the farthest cell that can reach it
+
+    DistanceField(Labyrinth labyrinth) {
+        this.labyrinth = labyrinth;
+        int width = labyrinth.getWidth();
+        int height = labyrinth.getHeight();
+        reachable = new long[height][(width + 63) >>> 6];
+        moves = new long[height][(width + 31) >>> 5];
+
+        // Breadth-first search backwards from end, i.e. along the passages into the cells already reached:
+        int[] queue = new int[width*height]; // cells y*width+x in the order of their distance to end
+        int head = 0;
+        int tail = 0;
+        Point end = labyrinth.getEnd();
+        reachable[end.getY()][end.getX() >>> 6] |= 1L << end.getX();
+        queue[tail++] = end.getY()*width + end.getX();
+        int distance = 0;
+        int layerEnd = tail;  // queue[head] to queue[layerEnd-1] have the current distance
+        while (head < tail) {
+            if (head == layerEnd) {
+                ++distance;
+                layerEnd = tail;
+            }
+            int cell = queue[head++];
+            int x = cell % width;
+            int y = cell / width;
+            for (Direction dir : DIRECTIONS) {
+                int nx = x + dir.dx;
+                int ny = y + dir.dy;
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height
+                        || PassageBitPlanes.isSet(reachable[ny], nx)
+                        || (labyrinth.passagesAt(nx, ny) & dir.opposite.bit) == 0)
+                    continue;
+                reachable[ny][nx >>> 6] |= 1L << nx;
+                moves[ny][nx >>> 5] |= (long)dir.opposite.ordinal() << ((nx & 31) << 1);
+                queue[tail++] = ny*width + nx;
+            }
+        }
+        maxDistance = distance;
+    }
+
+    Labyrinth getLabyrinth() {
+        return labyrinth;
+    }
+
+    int getMaxDistance() {
+        return maxDistance;
+    }
+
+    boolean canReachExit(Point p) {
+        return labyrinth.contains(p) && PassageBitPlanes.isSet(reachable[p.getY()], p.getX());
+    }
+
+    /**
+     * @return Returns the first move of a shortest path from <code>p</code> to the end, or null if
+     * <code>p</code> is the end or cannot reach it
+     */
+    Direction moveToExit(Point p) {
+        if (!canReachExit(p) || labyrinth.isDestination(p))
+            return null;
+        return DIRECTIONS[(int)(moves[p.getY()][p.getX() >>> 5] >>> ((p.getX() & 31) << 1)) & 3];
+    }
+
+    /**
+     * @return Returns a shortest path from <code>from</code> to the end of the labyrinth, or null if there is none
+     */
+    CompactPath routeToExit(Point from) {
+        if (!canReachExit(from))
+            return null;
+        Point end = labyrinth.getEnd();
+        CompactPath path = new CompactPath(from);
+        int x = from.getX();
+        int y = from.getY();
+        while (x != end.getX() || y != end.getY()) {
+            Direction move = DIRECTIONS[(int)(moves[y][x >>> 5] >>> ((x & 31) << 1)) & 3];
+            path.add(move);
+            x += move.dx;
+            y += move.dy;
+        }
+        return path;
+    }
+
+    /**
+     * Save this field together with its labyrinth to the file <code>fileName</code>.
+     */
+    void save(String fileName) throws IOException {
+        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(fileName))) {
+            oos.writeObject(this);
+        }
+    }
+
+    /**
+     * @return Returns the field (with its labyrinth) saved in the file <code>fileName</code>
+     */
+    static DistanceField load(String fileName) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(fileName))) {
+            return (DistanceField)ois.readObject();
+        }
+    }
+
+    /**
+     * @param args Same as for {@link Solver#main(String[])}. The field for the labyrinth is computed a certain
+     * number of times, then the route from start and routes from a number of random cells are followed, and
+     * the median computation time and the route times are printed. The route from start is displayed (unless
+     * the labyrinth is too large), and the field is saved to labyrinth-field.ser.
+     */
+    public static void main(String[] args) {
+        Labyrinth labyrinth = Solver.makeOrLoadLabyrinth(args);
+        if (labyrinth == null)
+            return;
+        long[] runTimes = new long[2*N_RUNS_HALF + 1];
+        DistanceField field = null;
+        for (int run = 0; run < 2*N_RUNS_HALF + 1; ++run) {
+            long startTime = System.currentTimeMillis();
+            field = new DistanceField(labyrinth);
+            long endTime = System.currentTimeMillis();
+            runTimes[run] = endTime - startTime;
+        }
+        Arrays.sort(runTimes);
+        System.out.println("Computed distance field (maximum distance " + field.getMaxDistance() + ") for labyrinth of size " +
+                labyrinth.getWidth() + "x" + labyrinth.getHeight() + ", median time " + runTimes[N_RUNS_HALF] + " ms.");
+        try {
+            field.save("labyrinth-field.ser");
+        } catch (IOException e) {
+            System.out.println(e);
+        }
+
+        long startTime = System.currentTimeMillis();
+        CompactPath solution = field.routeToExit(labyrinth.getStart());
+        long endTime = System.currentTimeMillis();
+        if (solution == null)
+            System.out.println("No solution exists.");
+        else {
+            System.out.println("Followed solution of length " + solution.length() + " in " + (endTime - startTime) + "ms.");
+            Solver.displaySolution(labyrinth, solution);
+            if (labyrinth.checkSolution(solution))
+                System.out.println("Solution correct :-)");
+            else
+                System.out.println("Solution incorrect :-(");
+        }
+
+        startTime = System.currentTimeMillis();
+        for (int q = 0; q < N_RANDOM_QUERIES; ++q)
+            field.routeToExit(new Point((int)(labyrinth.getWidth()*Math.random()), (int)(labyrinth.getHeight()*Math.random())));
+        endTime = System.currentTimeMillis();
+        System.out.println("Followed routes from " + N_RANDOM_QUERIES + " random cells in " + (endTime - startTime) + "ms.");
+    }
+}
@@ -0,0 +1,173 @@
+package uebung_parallelisierung.sequentiell;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A partition of the cells of a labyrinth into square blocks (the last ones in each direction
+ * possibly smaller), with cells identified by their index y*width+x, and searches restricted to
+ * one block. Used by the solvers and indexes that work block by block, e.g. {@link TileSolver}
+ * and {@link HierarchicalIndex}.
+ */
+final class GridPartition implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final Labyrinth labyrinth;
+    final int width;      // total number of cells in x direction
+    final int height;     // total number of cells in y direction
+    final int blockSize;
+    final int blocksX;    // number of blocks in x direction
+    final int blocksY;    // number of blocks in y direction
+
+    GridPartition(Labyrinth labyrinth, int blockSize) {
+        this.labyrinth = labyrinth;
+        width = labyrinth.getWidth();
+        height = labyrinth.getHeight();
+        this.blockSize = blockSize;
+        blocksX = (width + blockSize - 1) / blockSize;
+        blocksY = (height + blockSize - 1) / blockSize;
+    }
+
+    int blockCount() {
+        return blocksX*blocksY;
+    }
+
+    int blockOf(int cell) {
+        return (cell / width / blockSize)*blocksX + (cell % width) / blockSize;
+    }
+
+    /**
+     * @return Returns the first column of block <code>b</code>
+     */
+    int x0(int b) {
+        return (b % blocksX)*blockSize;
+    }
+
+    /**
+     * @return Returns the first row of block <code>b</code>
+     */
+    int y0(int b) {
+        return (b / blocksX)*blockSize;
+    }
+
+    /**
+     * @return Returns the first column after block <code>b</code>
+     */
+    int x1(int b) {
+        return Math.min(width, x0(b) + blockSize);
+    }
+
+    /**
+     * @return Returns the first row after block <code>b</code>
+     */
+    int y1(int b) {
+        return Math.min(height, y0(b) + blockSize);
+    }
+
+    /**
+     * @return Returns the number of cells of block <code>b</code>
+     */
+    int blockCells(int b) {
+        return (x1(b) - x0(b))*(y1(b) - y0(b));
+    }
+
+    /**
+     * @return Returns the index of <code>cell</code> (which must lie in block <code>b</code>) among the cells
+     * of the block, in row-major order
+     */
+    int localIndex(int b, int cell) {
+        int x0 = x0(b);
+        return (cell / width - y0(b))*(x1(b) - x0) + (cell % width - x0);
+    }
+
+    boolean hasPassage(int cell, Direction dir) {
+        return (labyrinth.passagesAt(cell % width, cell / width) & dir.bit) != 0;
+    }
+
+    int neighborCell(int cell, Direction dir) {
+        return cell + dir.dy*width + dir.dx;
+    }
+
+    /**
+     * @return Returns whether the neighbor of <code>cell</code> in direction <code>dir</code> lies inside the labyrinth
+     */
+    boolean hasNeighbor(int cell, Direction dir) {
+        int x = cell % width + dir.dx;
+        int y = cell / width + dir.dy;
+        return 0 <= x && x < width && 0 <= y && y < height;
+    }
+
+    /**
+     * @return Returns whether there is a passage from <code>cell</code> in direction <code>dir</code> into another block
+     */
+    boolean leavesBlock(int cell, Direction dir) {
+        return hasNeighbor(cell, dir) && hasPassage(cell, dir)
+                && blockOf(neighborCell(cell, dir)) != blockOf(cell);
+    }
+
+    /**
+     * Breadth-first search from <code>source</code> restricted to the cells of block <code>b</code>,
+     * following passages backwards if <code>reverse</code>. Stops once <code>target</code> is reached
+     * (pass -1 to search the whole block).
+     * @param dist Filled with the distance of each cell of the block (by local index), -1 if not reached
+     * @param move If not null, filled with the ordinal of the direction from the predecessor of each reached cell
+     */
+    void search(int b, int source, int target, boolean reverse, int[] dist, byte[] move) {
+        int x0 = x0(b);
+        int y0 = y0(b);
+        int x1 = x1(b);
+        int y1 = y1(b);
+        Arrays.fill(dist, -1);
+        int[] queue = new int[dist.length];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = source;
+        dist[localIndex(b, source)] = 0;
+        while (head < tail) {
+            int cell = queue[head++];
+            if (cell == target)
+                return;
+            int d = dist[localIndex(b, cell)];
+            for (Direction dir : DIRECTIONS) {
+                if (!hasNeighbor(cell, dir))
+                    continue;
+                int neighbor = neighborCell(cell, dir);
+                int nx = neighbor % width;
+                int ny = neighbor / width;
+                if (nx < x0 || nx >= x1 || ny < y0 || ny >= y1)
+                    continue;
+                if (reverse ? !hasPassage(neighbor, dir.opposite) : !hasPassage(cell, dir))
+                    continue;
+                int local = localIndex(b, neighbor);
+                if (dist[local] < 0) {
+                    dist[local] = d + 1;
+                    if (move != null)
+                        move[local] = (byte)dir.ordinal();
+                    queue[tail++] = neighbor;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Returns the moves (ordinals of the directions) of a shortest path from <code>from</code> to
+     * <code>to</code> inside block <code>b</code>, or null if there is none
+     */
+    byte[] shortestPath(int b, int from, int to) {
+        int[] dist = new int[blockCells(b)];
+        byte[] move = new byte[dist.length];
+        search(b, from, to, false, dist, move);
+        int length = dist[localIndex(b, to)];
+        if (length < 0)
+            return null;
+        byte[] moves = new byte[length];
+        int cell = to;
+        for (int i = length - 1; i >= 0; --i) {
+            moves[i] = move[localIndex(b, cell)];
+            cell = neighborCell(cell, DIRECTIONS[moves[i]].opposite);
+        }
+        return moves;
+    }
+}
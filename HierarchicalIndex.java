@@ -0,0 +1,395 @@
+package uebung_parallelisierung.sequentiell;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * A hierarchical index (in the style of HPA*) for answering many path queries on one labyrinth,
+ * which pays off in particular when the labyrinth has cycles: the grid is partitioned into square
+ * clusters, and each cell with a passage into or out of its cluster becomes an entrance node.
+ * Entrance nodes of the same cluster are connected by edges weighted with their distance inside the
+ * cluster, neighboring entrance nodes of different clusters by edges of weight 1.
+ * A query then searches this small abstract graph and only refines the clusters on the route found.
+ * Building the index processes the clusters in parallel; the index is serializable together with
+ * its labyrinth, so it can be saved with the maze and reused.
+ */
+final class HierarchicalIndex implements Serializable {
+    private static final long serialVersionUID = 2L;
+
+    static final int DEFAULT_CLUSTER_SIZE = 16;
+
+    private static final int N_RUNS_HALF = 5;  // #runs will be 2*N_RUNS_HALF + 1
+    private static final int N_RANDOM_QUERIES = 100;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final Labyrinth labyrinth;
+    private final GridPartition clusters;  // the clusters are the blocks of this partition
+
+    // The entrance nodes of cluster c are nodes clusterFirstNode[c] to clusterFirstNode[c+1]-1,
+    // sorted by their cell index y*width+x in nodeCell:
+    private final int[] clusterFirstNode;
+    private final int[] nodeCell;
+
+    // Edges of the abstract graph: the edges from node n are edgeStart[n] to edgeStart[n+1]-1
+    private final int[] edgeStart;
+    private final int[] edgeTarget;
+    private final int[] edgeWeight;
+
+    /**
+     * Entrances and intra-cluster distances of one cluster, with nodes numbered locally.
+     */
+    private static final class ClusterGraph {
+        final int[] entranceCells;
+        final int[][] distances; // distances[i][j] from entrance i to entrance j, -1 if not reachable
+
+        ClusterGraph(int[] entranceCells, int[][] distances) {
+            this.entranceCells = entranceCells;
+            this.distances = distances;
+        }
+    }
+
+    HierarchicalIndex(Labyrinth labyrinth) {
+        this(labyrinth, DEFAULT_CLUSTER_SIZE);
+    }
+
+    HierarchicalIndex(Labyrinth labyrinth, int clusterSize) {
+        this.labyrinth = labyrinth;
+        clusters = new GridPartition(labyrinth, clusterSize);
+        int nClusters = clusters.blockCount();
+
+        // Clusters are independent of each other, so find their entrances and distances in parallel:
+        ClusterGraph[] graphs = IntStream.range(0, nClusters).parallel()
+                .mapToObj(this::buildCluster)
+                .toArray(ClusterGraph[]::new);
+
+        clusterFirstNode = new int[nClusters + 1];
+        for (int c = 0; c < nClusters; ++c)
+            clusterFirstNode[c+1] = clusterFirstNode[c] + graphs[c].entranceCells.length;
+        int nNodes = clusterFirstNode[nClusters];
+        nodeCell = new int[nNodes];
+        for (int c = 0; c < nClusters; ++c)
+            System.arraycopy(graphs[c].entranceCells, 0, nodeCell, clusterFirstNode[c], graphs[c].entranceCells.length);
+
+        // Count the edges of each node, then fill them in (nodes of different clusters in parallel):
+        edgeStart = new int[nNodes + 1];
+        IntStream.range(0, nClusters).parallel().forEach(c -> {
+            int[][] distances = graphs[c].distances;
+            for (int i = 0; i < distances.length; ++i) {
+                int count = 0;
+                for (int j = 0; j < distances.length; ++j) {
+                    if (i != j && distances[i][j] >= 0)
+                        ++count;
+                }
+                int cell = nodeCell[clusterFirstNode[c] + i];
+                for (Direction dir : DIRECTIONS) {
+                    if (clusters.leavesBlock(cell, dir))
+                        ++count;
+                }
+                edgeStart[clusterFirstNode[c] + i + 1] = count;
+            }
+        });
+        for (int n = 0; n < nNodes; ++n)
+            edgeStart[n+1] += edgeStart[n];
+        edgeTarget = new int[edgeStart[nNodes]];
+        edgeWeight = new int[edgeStart[nNodes]];
+        IntStream.range(0, nClusters).parallel().forEach(c -> {
+            int[][] distances = graphs[c].distances;
+            for (int i = 0; i < distances.length; ++i) {
+                int node = clusterFirstNode[c] + i;
+                int e = edgeStart[node];
+                for (int j = 0; j < distances.length; ++j) {
+                    if (i != j && distances[i][j] >= 0) {
+                        edgeTarget[e] = clusterFirstNode[c] + j;
+                        edgeWeight[e++] = distances[i][j];
+                    }
+                }
+                int cell = nodeCell[node];
+                for (Direction dir : DIRECTIONS) {
+                    if (clusters.leavesBlock(cell, dir)) {
+                        edgeTarget[e] = nodeOf(clusters.neighborCell(cell, dir));
+                        edgeWeight[e++] = 1;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @return Returns the entrance node of <code>cell</code>, or a negative number if it is no entrance
+     */
+    private int nodeOf(int cell) {
+        int c = clusters.blockOf(cell);
+        return Arrays.binarySearch(nodeCell, clusterFirstNode[c], clusterFirstNode[c+1], cell);
+    }
+
+    private ClusterGraph buildCluster(int c) {
+        int x0 = clusters.x0(c);
+        int y0 = clusters.y0(c);
+        int x1 = clusters.x1(c);
+        int y1 = clusters.y1(c);
+
+        // Entrances in row-major order, i.e. sorted by cell index:
+        int[] entrances = new int[(x1-x0)*(y1-y0)];
+        int nEntrances = 0;
+        for (int y = y0; y < y1; ++y) {
+            for (int x = x0; x < x1; ++x) {
+                int cell = y*clusters.width + x;
+                for (Direction dir : DIRECTIONS) {
+                    if (!clusters.hasNeighbor(cell, dir))
+                        continue;
+                    int neighbor = clusters.neighborCell(cell, dir);
+                    if (clusters.leavesBlock(cell, dir)
+                            || (clusters.blockOf(neighbor) != c && clusters.hasPassage(neighbor, dir.opposite))) {
+                        entrances[nEntrances++] = cell;
+                        break;
+                    }
+                }
+            }
+        }
+        entrances = Arrays.copyOf(entrances, nEntrances);
+
+        int[][] distances = new int[nEntrances][];
+        int[] dist = new int[(x1-x0)*(y1-y0)];
+        for (int i = 0; i < nEntrances; ++i) {
+            clusters.search(c, entrances[i], -1, false, dist, null);
+            distances[i] = new int[nEntrances];
+            for (int j = 0; j < nEntrances; ++j)
+                distances[i][j] = dist[clusters.localIndex(c, entrances[j])];
+        }
+        return new ClusterGraph(entrances, distances);
+    }
+
+    Labyrinth getLabyrinth() {
+        return labyrinth;
+    }
+
+    int nodeCount() {
+        return nodeCell.length;
+    }
+
+    /**
+     * @return Returns a path from <code>from</code> to <code>to</code>, or null if none exists. The path is
+     * shortest among the paths through the entrance nodes, but not necessarily shortest overall.
+     */
+    CompactPath route(Point from, Point to) {
+        if (!labyrinth.contains(from) || !labyrinth.contains(to))
+            return null;
+        int fromCell = from.getY()*clusters.width + from.getX();
+        int toCell = to.getY()*clusters.width + to.getX();
+        int fromCluster = clusters.blockOf(fromCell);
+        int toCluster = clusters.blockOf(toCell);
+
+        if (fromCluster == toCluster) {
+            byte[] moves = clusters.shortestPath(fromCluster, fromCell, toCell);
+            if (moves != null)
+                return toPath(from, new byte[][] { moves });
+        }
+
+        // Connect from and to to the entrances of their clusters:
+        int[] fromDist = new int[clusters.blockCells(fromCluster)];
+        clusters.search(fromCluster, fromCell, -1, false, fromDist, null);
+        int[] toDist = new int[clusters.blockCells(toCluster)];
+        clusters.search(toCluster, toCell, -1, true, toDist, null);
+
+        // A* on the abstract graph with the Manhattan distance to to as heuristic,
+        // with node nNodes standing for to:
+        int nNodes = nodeCell.length;
+        int target = nNodes;
+        int[] dist = new int[nNodes + 1];
+        int[] pred = new int[nNodes + 1];  // -1 for the nodes entered directly from from
+        Arrays.fill(dist, Integer.MAX_VALUE);
+        LongHeap queue = new LongHeap(); // estimated total distance in high, node in low 32 bits
+        for (int n = clusterFirstNode[fromCluster]; n < clusterFirstNode[fromCluster+1]; ++n) {
+            int d = fromDist[clusters.localIndex(fromCluster, nodeCell[n])];
+            if (d >= 0) {
+                dist[n] = d;
+                pred[n] = -1;
+                queue.add(((long)(d + manhattan(nodeCell[n], toCell)) << 32) | n);
+            }
+        }
+        while (!queue.isEmpty()) {
+            long entry = queue.poll();
+            int node = (int)entry;
+            if (node == target)
+                break;
+            int d = dist[node];
+            if ((int)(entry >>> 32) > d + manhattan(nodeCell[node], toCell))
+                continue;  // outdated entry
+            for (int e = edgeStart[node]; e < edgeStart[node+1]; ++e)
+                relax(node, edgeTarget[e], d + edgeWeight[e], toCell, dist, pred, queue);
+            if (clusterFirstNode[toCluster] <= node && node < clusterFirstNode[toCluster+1]) {
+                int toTarget = toDist[clusters.localIndex(toCluster, nodeCell[node])];
+                if (toTarget >= 0)
+                    relax(node, target, d + toTarget, toCell, dist, pred, queue);
+            }
+        }
+        if (dist[target] == Integer.MAX_VALUE)
+            return null;
+
+        // Entrance nodes on the route, in order from from to to:
+        int nRouteNodes = 0;
+        for (int n = pred[target]; n >= 0; n = pred[n])
+            ++nRouteNodes;
+        int[] routeCells = new int[nRouteNodes + 2];
+        routeCells[0] = fromCell;
+        routeCells[nRouteNodes + 1] = toCell;
+        for (int n = pred[target], i = nRouteNodes; n >= 0; n = pred[n], --i)
+            routeCells[i] = nodeCell[n];
+
+        // Refine the segments between consecutive cells of the route in parallel:
+        byte[][] segments = IntStream.range(0, nRouteNodes + 1).parallel().mapToObj(i -> {
+            int a = routeCells[i];
+            int b = routeCells[i+1];
+            if (clusters.blockOf(a) == clusters.blockOf(b))
+                return clusters.shortestPath(clusters.blockOf(a), a, b);
+            for (Direction dir : DIRECTIONS) { // edge between neighboring clusters
+                if (clusters.hasNeighbor(a, dir) && clusters.neighborCell(a, dir) == b)
+                    return new byte[] { (byte)dir.ordinal() };
+            }
+            throw new IllegalStateException("Route cells " + a + " and " + b + " are not adjacent");
+        }).toArray(byte[][]::new);
+        return toPath(from, segments);
+    }
+
+    private void relax(int node, int next, int d, int toCell, int[] dist, int[] pred, LongHeap queue) {
+        if (d < dist[next]) {
+            dist[next] = d;
+            pred[next] = node;
+            int estimate = next < nodeCell.length ? d + manhattan(nodeCell[next], toCell) : d;
+            queue.add(((long)estimate << 32) | next);
+        }
+    }
+
+    private int manhattan(int cell, int otherCell) {
+        int width = clusters.width;
+        return Math.abs(cell % width - otherCell % width) + Math.abs(cell / width - otherCell / width);
+    }
+
+    /**
+     * A binary min-heap of primitive longs (avoids boxing in the abstract graph search).
+     */
+    private static final class LongHeap {
+        private long[] heap = new long[64];
+        private int size = 0;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void add(long value) {
+            if (size == heap.length)
+                heap = Arrays.copyOf(heap, 2*size);
+            int i = size++;
+            while (i > 0 && heap[(i-1) >>> 1] > value) {
+                heap[i] = heap[(i-1) >>> 1];
+                i = (i-1) >>> 1;
+            }
+            heap[i] = value;
+        }
+
+        long poll() {
+            long result = heap[0];
+            long last = heap[--size];
+            int i = 0;
+            while (2*i + 1 < size) {
+                int child = 2*i + 1;
+                if (child + 1 < size && heap[child+1] < heap[child])
+                    ++child;
+                if (heap[child] >= last)
+                    break;
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = last;
+            return result;
+        }
+    }
+
+    private static CompactPath toPath(Point from, byte[][] segments) {
+        int nMoves = 0;
+        for (byte[] segment : segments)
+            nMoves += segment.length;
+        CompactPath path = new CompactPath(from, nMoves);
+        for (byte[] segment : segments) {
+            for (byte move : segment)
+                path.add(DIRECTIONS[move]);
+        }
+        return path;
+    }
+
+    /**
+     * Save this index together with its labyrinth to the file <code>fileName</code>.
+     */
+    void save(String fileName) throws IOException {
+        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(fileName))) {
+            oos.writeObject(this);
+        }
+    }
+
+    /**
+     * @return Returns the index (with its labyrinth) saved in the file <code>fileName</code>
+     */
+    static HierarchicalIndex load(String fileName) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(fileName))) {
+            return (HierarchicalIndex)ois.readObject();
+        }
+    }
+
+    /**
+     * @param args Same as for {@link Solver#main(String[])}. The index for the labyrinth is built a certain
+     * number of times, then the path from start to end and a number of paths between random cells are
+     * computed with it, and the median build time and the query times are printed. The index is saved
+     * to labyrinth-index.ser.
+     */
+    public static void main(String[] args) {
+        Labyrinth labyrinth = Solver.makeOrLoadLabyrinth(args);
+        if (labyrinth == null)
+            return;
+        long[] runTimes = new long[2*N_RUNS_HALF + 1];
+        HierarchicalIndex index = null;
+        for (int run = 0; run < 2*N_RUNS_HALF + 1; ++run) {
+            long startTime = System.currentTimeMillis();
+            index = new HierarchicalIndex(labyrinth);
+            long endTime = System.currentTimeMillis();
+            runTimes[run] = endTime - startTime;
+        }
+        Arrays.sort(runTimes);
+        System.out.println("Built index with " + index.nodeCount() + " entrance nodes for labyrinth of size " +
+                labyrinth.getWidth() + "x" + labyrinth.getHeight() + ", median build time " + runTimes[N_RUNS_HALF] + " ms.");
+        try {
+            index.save("labyrinth-index.ser");
+        } catch (IOException e) {
+            System.out.println(e);
+        }
+
+        long startTime = System.currentTimeMillis();
+        CompactPath solution = index.route(labyrinth.getStart(), labyrinth.getEnd());
+        long endTime = System.currentTimeMillis();
+        if (solution == null)
+            System.out.println("No solution exists.");
+        else {
+            System.out.println("Computed solution of length " + solution.length() + " with index in " +
+                    (endTime - startTime) + "ms.");
+            if (labyrinth.checkSolution(solution))
+                System.out.println("Solution correct :-)");
+            else
+                System.out.println("Solution incorrect :-(");
+        }
+
+        startTime = System.currentTimeMillis();
+        for (int q = 0; q < N_RANDOM_QUERIES; ++q) {
+            Point from = new Point((int)(labyrinth.getWidth()*Math.random()), (int)(labyrinth.getHeight()*Math.random()));
+            Point to = new Point((int)(labyrinth.getWidth()*Math.random()), (int)(labyrinth.getHeight()*Math.random()));
+            index.route(from, to);
+        }
+        endTime = System.currentTimeMillis();
+        System.out.println("Answered " + N_RANDOM_QUERIES + " queries between random cells in " + (endTime - startTime) + "ms.");
+    }
+}
@@ -42,6 +42,14 @@ public final class Labyrinth implements Serializable{
      *  by walls on all their four sides). Note that two-way passages appear as opposite
      *  bits in both the source and destination cell; thus, this data structure supports
      *  one-way passages, too, by setting a bit in the source cell only.
+     *  Null if the labyrinth uses packedPassages instead.
+     */
+
+    private final PackedPassages packedPassages;
+    /*
+     *  Alternative storage of the same four bits per cell, packed 16 cells per long
+     *  (see class PackedPassages), so a labyrinth of a given size needs about half the
+     *  memory of passages. Null if the labyrinth uses passages instead.
      */
 
     // When generating the labyrinth and considering whether to create a passage to some neighbor cell, create a
@@ -54,6 +62,13 @@ public final class Labyrinth implements Serializable{
     private static final int MAX_PX_TO_DISPLAY = 1000;
 
     public Labyrinth(int width, int height) {
+        this(width, height, false);
+    }
+
+    /**
+     * Generate a new, random labyrinth; if <code>packed</code>, its passages are stored in packedPassages.
+     */
+    public Labyrinth(int width, int height, boolean packed) {
         this.width = width;
         this.height = height;
 
@@ -85,10 +100,27 @@ public final class Labyrinth implements Serializable{
         }
         end = new Point(endX, endY);
 
-        passages = new byte[width][height]; // initially all 0 (see comment at declaration of passages)
+        // initially all 0 (see comment at declaration of passages):
+        passages = packed ? null : new byte[width][height];
+        packedPassages = packed ? new PackedPassages(width, height) : null;
         makePassages();
     }
 
+    /**
+     * Copy <code>other</code> into the given, empty packed passages.
+     */
+    private Labyrinth(Labyrinth other, PackedPassages packedPassages) {
+        width = other.width;
+        height = other.height;
+        start = other.start;
+        end = other.end;
+        passages = null;
+        this.packedPassages = packedPassages;
+        for (int x = 0; x < width; ++x)
+            for (int y = 0; y < height; ++y)
+                packedPassages.set(x, y, other.passagesAt(x, y));
+    }
+
     public int getWidth() {
         return width;
     }
@@ -101,8 +133,40 @@ public final class Labyrinth implements Serializable{
         return start;
     }
 
+    public Point getEnd() {
+        return end;
+    }
+
+    /**
+     * Return the passage bits of cell (x, y) (see comment at declaration of passages).
+     */
+    int passagesAt(int x, int y) {
+        return passages != null ? passages[x][y] : packedPassages.get(x, y);
+    }
+
+    private void addPassage(int x, int y, Direction dir) {
+        if (passages != null)
+            passages[x][y] |= dir.bit;
+        else
+            packedPassages.set(x, y, packedPassages.get(x, y) | dir.bit);
+    }
+
+    /**
+     * @return Returns whether the passages are stored packed (see comment at declaration of packedPassages).
+     */
+    public boolean isPacked() {
+        return packedPassages != null;
+    }
+
+    /**
+     * @return Returns a copy of this labyrinth (same passages, start and end) whose passages are stored packed.
+     */
+    public Labyrinth packed() {
+        return new Labyrinth(this, new PackedPassages(width, height));
+    }
+
     public boolean hasPassage(Point from, Direction directionToNeighbor) {
-        return contains(from)  && (passages[from.getX()][from.getY()] & directionToNeighbor.bit) != 0;
+        return contains(from)  && (passagesAt(from.getX(), from.getY()) & directionToNeighbor.bit) != 0;
     }
 
     public boolean hasPassage(Point from, Point to) {
@@ -110,13 +174,13 @@ public final class Labyrinth implements Serializable{
             return false;
         }
         if (from.getNeighbor(Direction.N).equals(to))
-            return (passages[from.getX()][from.getY()] & Direction.N.bit) != 0;
+            return (passagesAt(from.getX(), from.getY()) & Direction.N.bit) != 0;
         if (from.getNeighbor(Direction.S).equals(to))
-            return (passages[from.getX()][from.getY()] & Direction.S.bit) != 0;
+            return (passagesAt(from.getX(), from.getY()) & Direction.S.bit) != 0;
         if (from.getNeighbor(Direction.E).equals(to))
-            return (passages[from.getX()][from.getY()] & Direction.E.bit) != 0;
+            return (passagesAt(from.getX(), from.getY()) & Direction.E.bit) != 0;
         if (from.getNeighbor(Direction.W).equals(to))
-            return (passages[from.getX()][from.getY()] & Direction.W.bit) != 0;
+            return (passagesAt(from.getX(), from.getY()) & Direction.W.bit) != 0;
         return false;  // To suppress warning about undefined return value
     }
 
@@ -134,7 +198,7 @@ public final class Labyrinth implements Serializable{
      */
     public boolean isBlindAlley(Point p, Direction fromDir) {
         int directionBitsExceptFromDir = Direction.allDirectionBits & ~fromDir.bit;
-        return (passages[p.getX()][p.getY()] & directionBitsExceptFromDir) == 0;
+        return (passagesAt(p.getX(), p.getY()) & directionBitsExceptFromDir) == 0;
     }
 
     /**
@@ -161,12 +225,12 @@ public final class Labyrinth implements Serializable{
                 int ny = neighbor.getY();
 
                 if (contains(neighbor) // If neighbor is still in the labyrinth ...
-                        && 	(	 passages[nx][ny] == 0 // ... and has no passage yet, i.e. has not been visited yet during generation
+                        && 	(	 passagesAt(nx, ny) == 0 // ... and has no passage yet, i.e. has not been visited yet during generation
                         || Math.random() < CYCLE_CREATION_PROBABILITY )) {  // ... or creating a cycle is OK
 
                     // Make a two-way passage, i.e. from current to neighbor and from neighbor to current:
-                    passages[cx][cy] |= dir.bit;
-                    passages[nx][ny] |= dir.opposite.bit;
+                    addPassage(cx, cy, dir);
+                    addPassage(nx, ny, dir.opposite);
 
                     // Remember to continue from this neighbor later on
                     pointsToDo.push(neighbor);
@@ -181,12 +245,12 @@ public final class Labyrinth implements Serializable{
         for (int i = 0; i < height; i++) {
             // draw the north edges
             for (int j = 0; j < width; j++) {
-                System.out.print((passages[j][i] & Direction.N.bit) == 0 ? "+---" : "+   ");
+                System.out.print((passagesAt(j, i) & Direction.N.bit) == 0 ? "+---" : "+   ");
             }
             System.out.println("+");
             // draw the west edges
             for (int j = 0; j < width; j++) {
-                System.out.print((passages[j][i] & Direction.W.bit) == 0 ? "|   " : "    ");
+                System.out.print((passagesAt(j, i) & Direction.W.bit) == 0 ? "|   " : "    ");
             }
             // draw the far east edge
             System.out.println("|");
@@ -218,12 +282,12 @@ public final class Labyrinth implements Serializable{
         for(int x = 0; x < width; ++x) {
             for(int y = 0; y < height; ++y) {
                 // draw north edge of each cell (together with south edge of cell above)
-                if ((passages[x][y] & Direction.N.bit) == 0)
+                if ((passagesAt(x, y) & Direction.N.bit) == 0)
                     // y-HALF_WALL_PX will be half out of labyrinth for x==0 row,
                     // but that does not hurt the picture thanks to automatic cropping
                     graphics.fillRect(x*CELL_PX, y*CELL_PX-HALF_WALL_PX, CELL_PX, 2*HALF_WALL_PX);
                 // draw west edge of each cell (together with east edge of cell to the left)
-                if ((passages[x][y] & Direction.W.bit) == 0)
+                if ((passagesAt(x, y) & Direction.W.bit) == 0)
                     // x-HALF_WALL_PX will be half out of labyrinth for y==0 column,
                     // but that does not hurt the picture thanks to automatic cropping
                     graphics.fillRect(x*CELL_PX-HALF_WALL_PX, y*CELL_PX, 2*HALF_WALL_PX, CELL_PX);
@@ -257,4 +321,31 @@ public final class Labyrinth implements Serializable{
         }
         return true;
     }
+
+    public boolean checkSolution(CompactPath solution) {
+        Point from = solution.getStart();
+        if (!from.equals(start)) {
+            System.out.println("checkSolution fails because the first cell is" + from + ", but not  " + start);
+            return false;
+        }
+
+        int x = from.getX();
+        int y = from.getY();
+        for (int i = 0; i < solution.moveCount(); ++i) {
+            Direction move = solution.move(i);
+            if ((passagesAt(x, y) & move.bit) == 0
+                    || !(0 <= x+move.dx && x+move.dx < width && 0 <= y+move.dy && y+move.dy < height)) {
+                System.out.println("checkSolution fails because there is no passage from " + new Point(x, y) +
+                        " in direction " + move);
+                return false;
+            }
+            x += move.dx;
+            y += move.dy;
+        }
+        if (x != end.getX() || y != end.getY()) {
+            System.out.println("checkSolution fails because the last cell is" + new Point(x, y) + ", but not  " + end);
+            return false;
+        }
+        return true;
+    }
 }
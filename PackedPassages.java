@@ -0,0 +1,90 @@
+package uebung_parallelisierung.sequentiell;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The passage bits of all cells of a labyrinth (see comment at declaration of
+ * <code>Labyrinth.passages</code>), packed as 4-bit nibbles, 16 cells per <code>long</code>,
+ * row by row. Compared to one byte per cell in a <code>byte[][]</code>, this halves the memory
+ * for the cells and avoids the per-column array headers.
+ */
+final class PackedPassages implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final int N_RUNS_HALF = 5;  // #runs will be 2*N_RUNS_HALF + 1
+
+    private final int width;
+    private final long[] cells; // nibble i%16 of cells[i/16] holds cell i = y*width+x (as long)
+
+    PackedPassages(int width, int height) {
+        long nWords = ((long)width*height + 15) >>> 4;
+        // A long[] has at most Integer.MAX_VALUE words, i.e. room for about 2^35 cells:
+        if (nWords > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Labyrinth of size " + width + "x" + height + " has too many cells to pack");
+        this.width = width;
+        cells = new long[(int)nWords]; // initially all 0
+    }
+
+    int get(int x, int y) {
+        long i = (long)y*width + x;
+        return (int)(cells[(int)(i >>> 4)] >>> ((int)(i & 15) << 2)) & Direction.allDirectionBits;
+    }
+
+    void set(int x, int y, int bits) {
+        long i = (long)y*width + x;
+        int word = (int)(i >>> 4);
+        int shift = (int)(i & 15) << 2;
+        cells[word] = (cells[word] & ~(0xFL << shift)) | ((long)(bits & 0xF) << shift);
+    }
+
+    /**
+     * @return Returns the approximate heap size in bytes of the passages of a labyrinth of the given size,
+     * stored packed or as <code>byte[width][height]</code>.
+     */
+    static long approximateBytes(int width, int height, boolean packed) {
+        final int arrayHeader = 16;
+        final int reference = 4; // with compressed oops
+        if (packed)
+            return arrayHeader + 8*(((long)width*height + 15) >>> 4);
+        return arrayHeader + (long)reference*width + width*(arrayHeader + ((height + 7L) & ~7L));
+    }
+
+    /**
+     * @param args Same as for {@link Solver#main(String[])}. The labyrinth is solved with the sequential
+     * {@link Solver}, both with byte[][] and packed passages, a certain number of times, and the median
+     * run times and the memory used for the passages are printed.
+     */
+    public static void main(String[] args) {
+        Labyrinth labyrinth = Solver.makeOrLoadLabyrinth(args);
+        if (labyrinth == null)
+            return;
+        Labyrinth packed = labyrinth.packed();
+        long[] runTimes = new long[2*N_RUNS_HALF + 1];
+        long[] runTimesPacked = new long[2*N_RUNS_HALF + 1];
+
+        for (int run = 0; run < 2*N_RUNS_HALF + 1; ++run) {
+            long startTime = System.currentTimeMillis();
+            Point[] solution = new Solver(labyrinth).solve();
+            long endTime = System.currentTimeMillis();
+            runTimes[run] = endTime - startTime;
+
+            startTime = System.currentTimeMillis();
+            Point[] solutionPacked = new Solver(packed).solve();
+            endTime = System.currentTimeMillis();
+            runTimesPacked[run] = endTime - startTime;
+
+            System.out.println("Solved labyrinth of size " + labyrinth.getWidth() + "x" + labyrinth.getHeight() +
+                    " in " + runTimes[run] + "ms (packed: " + runTimesPacked[run] + "ms).");
+            if (solution != null && !Arrays.equals(solution, solutionPacked))
+                System.out.println("Solutions differ :-(");
+        }
+        Arrays.sort(runTimes);
+        Arrays.sort(runTimesPacked);
+        System.out.println("Median run time was " + runTimes[N_RUNS_HALF] + " ms" +
+                " (packed: " + runTimesPacked[N_RUNS_HALF] + " ms).");
+        System.out.println("Passages take about " +
+                approximateBytes(labyrinth.getWidth(), labyrinth.getHeight(), false) + " bytes" +
+                " (packed: " + approximateBytes(labyrinth.getWidth(), labyrinth.getHeight(), true) + " bytes).");
+    }
+}
@@ -0,0 +1,318 @@
+package uebung_parallelisierung.sequentiell;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Solves a labyrinth with several worker processes on the same machine, each of which holds only a
+ * horizontal band of rows of the labyrinth (see {@link BandWorker}). The labyrinth is given as a
+ * {@link PassageFile}; the coordinator reads only its header, launches the workers, tells each over a loopback
+ * socket which band to read from the file, and then runs the search in rounds: in each round, all
+ * workers with new cells to start from search their bands concurrently and report the passages leaving
+ * their band, which become the starting cells of the neighboring bands in the next round. Once a worker
+ * has reached end, the path is traced back band by band.
+ * <p>
+ * So neither the coordinator nor any worker holds the whole labyrinth: each worker holds one byte per cell
+ * of its band plus its search state, and the coordinator only start, end and the band boundaries. Only writing
+ * the passage file from a {@link Labyrinth} (as {@link #main(String[])} does) needs the labyrinth in one heap.
+ */
+final public class PartitionedSolver implements AutoCloseable {
+
+    private static final int N_RUNS_HALF = 2;  // #runs will be 2*N_RUNS_HALF + 1
+
+    private static final String PASSAGE_FILE_NAME = "labyrinth-passages.bin";  // written by main
+
+    // Give up if a worker has not connected after this time:
+    private static final int CONNECT_TIMEOUT_MS = 30000;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final Point start;
+    private final Point end;
+    private final int nBands;
+    private final int[] bandStart;  // band b consists of rows bandStart[b] to bandStart[b+1]-1
+    private final Process[] workers;
+    private final Socket[] sockets;
+    private final DataInputStream[] in;
+    private final DataOutputStream[] out;
+
+    private int rounds;          // statistics of the latest solve()
+    private long visitedCells;
+
+    /**
+     * Launch <code>nWorkers</code> worker processes (at most one per row) for the labyrinth in the
+     * {@link PassageFile} <code>passageFileName</code>, each of which reads its band from that file.
+     */
+    public PartitionedSolver(String passageFileName, int nWorkers) throws IOException {
+        PassageFile file = new PassageFile(passageFileName);
+        start = file.getStart();
+        end = file.getEnd();
+        int height = file.getHeight();
+        nBands = Math.max(1, Math.min(nWorkers, height));
+        bandStart = new int[nBands + 1];
+        for (int b = 0; b <= nBands; ++b)
+            bandStart[b] = (int)((long)height*b / nBands);
+        workers = new Process[nBands];
+        sockets = new Socket[nBands];
+        in = new DataInputStream[nBands];
+        out = new DataOutputStream[nBands];
+
+        try {
+            startWorkers();
+            sendBands(new File(passageFileName).getAbsolutePath());
+        } catch (IOException | RuntimeException e) {
+            // The caller gets no object to close, so clean up here; workers waiting for requests then fail:
+            for (Socket socket : sockets) {
+                try {
+                    if (socket != null)
+                        socket.close();
+                } catch (IOException closeException) {
+                    e.addSuppressed(closeException);
+                }
+            }
+            for (Process worker : workers) {
+                if (worker != null)
+                    worker.destroy();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Launch the worker processes and accept their connections.
+     */
+    private void startWorkers() throws IOException {
+        try (ServerSocket server = new ServerSocket(0, nBands, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(CONNECT_TIMEOUT_MS);
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            for (int b = 0; b < nBands; ++b) {
+                workers[b] = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                                                BandWorker.class.getName(), Integer.toString(server.getLocalPort()))
+                        .inheritIO()
+                        .start();
+            }
+            // Workers get their bands in the order in which they connect:
+            for (int b = 0; b < nBands; ++b) {
+                sockets[b] = server.accept();
+                sockets[b].setTcpNoDelay(true);
+                in[b] = new DataInputStream(new BufferedInputStream(sockets[b].getInputStream()));
+                out[b] = new DataOutputStream(new BufferedOutputStream(sockets[b].getOutputStream()));
+            }
+        }
+    }
+
+    private void sendBands(String passageFileName) throws IOException {
+        for (int b = 0; b < nBands; ++b) {
+            out[b].writeInt(BandWorker.INIT);
+            out[b].writeUTF(passageFileName);
+            out[b].writeInt(bandStart[b]);
+            out[b].writeInt(bandStart[b+1]);
+            out[b].flush();
+        }
+    }
+
+    private int bandOf(int y) {
+        int b = Arrays.binarySearch(bandStart, y);
+        return b >= 0 ? b : -b - 2;
+    }
+
+    /**
+     * Starting cells for one band: triples of x, y and the move by which the cell is entered.
+     */
+    private static final class Seeds {
+        int[] cells = new int[48];
+        int size = 0;  // number of ints used
+
+        void add(int x, int y, int move) {
+            if (size + 3 > cells.length)
+                cells = Arrays.copyOf(cells, 2*cells.length);
+            cells[size++] = x;
+            cells[size++] = y;
+            cells[size++] = move;
+        }
+    }
+
+    /**
+     * @return Returns a path through the labyrinth from start to end, or null if no solution exists
+     */
+    public CompactPath solve() throws IOException {
+        for (DataOutputStream o : out) {
+            o.writeInt(BandWorker.RESET);
+            o.flush();
+        }
+        rounds = 0;
+        visitedCells = 0;
+
+        Seeds[] seeds = new Seeds[nBands];
+        for (int b = 0; b < nBands; ++b)
+            seeds[b] = new Seeds();
+        seeds[bandOf(start.getY())].add(start.getX(), start.getY(), BandWorker.START);
+
+        // Search in rounds until a worker reports that it has reached end:
+        boolean reachedEnd = false;
+        while (!reachedEnd) {
+            boolean[] searching = new boolean[nBands];
+            for (int b = 0; b < nBands; ++b) {
+                if (seeds[b].size > 0) {
+                    searching[b] = true;
+                    out[b].writeInt(BandWorker.SEEDS);
+                    out[b].writeInt(seeds[b].size / 3);
+                    for (int i = 0; i < seeds[b].size; ++i)
+                        out[b].writeInt(seeds[b].cells[i]);
+                    out[b].flush();
+                    seeds[b] = new Seeds();
+                }
+            }
+            boolean anySearching = false;
+            for (int b = 0; b < nBands; ++b) {
+                if (!searching[b])
+                    continue;
+                anySearching = true;
+                reachedEnd |= in[b].readBoolean();
+                visitedCells += in[b].readInt();
+                int nCrossings = in[b].readInt();
+                for (int c = 0; c < nCrossings; ++c) {
+                    int x = in[b].readInt();
+                    int y = in[b].readInt();
+                    int move = in[b].readInt();
+                    seeds[bandOf(y)].add(x, y, move);
+                }
+            }
+            if (!anySearching)
+                return null; // No band has cells left to search: No solution exists
+            ++rounds;
+        }
+
+        // Trace the path back from end, one band at a time:
+        ArrayList<byte[]> segments = new ArrayList<>();
+        int nMoves = 0;
+        int x = end.getX();
+        int y = end.getY();
+        while (true) {
+            int b = bandOf(y);
+            out[b].writeInt(BandWorker.TRACE);
+            out[b].writeInt(x);
+            out[b].writeInt(y);
+            out[b].flush();
+            byte[] moves = new byte[in[b].readInt()];
+            in[b].readFully(moves);
+            int firstMove = in[b].readInt();
+            segments.add(moves);
+            nMoves += moves.length;
+            if (firstMove == BandWorker.START)
+                break;
+            // Continue from the cell in the other band before the first move:
+            for (byte move : moves) {
+                x -= DIRECTIONS[move].dx;
+                y -= DIRECTIONS[move].dy;
+            }
+        }
+        CompactPath path = new CompactPath(start, nMoves);
+        for (int s = segments.size() - 1; s >= 0; --s) {
+            for (byte move : segments.get(s))
+                path.add(DIRECTIONS[move]);
+        }
+        return path;
+    }
+
+    int getRounds() {
+        return rounds;
+    }
+
+    long getVisitedCells() {
+        return visitedCells;
+    }
+
+    /**
+     * Tell the workers to quit and wait for them to end. A worker that cannot be told (e.g. because it has
+     * died) is destroyed; the other workers are still shut down, and the first failure is thrown afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (int b = 0; b < nBands; ++b) {
+            try {
+                out[b].writeInt(BandWorker.QUIT);
+                out[b].flush();
+            } catch (IOException e) {
+                workers[b].destroy();
+                if (failure == null)
+                    failure = e;
+                else
+                    failure.addSuppressed(e);
+            }
+            try {
+                sockets[b].close();
+            } catch (IOException e) {
+                if (failure == null)
+                    failure = e;
+                else
+                    failure.addSuppressed(e);
+            }
+        }
+        for (Process worker : workers) {
+            try {
+                worker.waitFor();
+            } catch (InterruptedException e) {
+                worker.destroy();
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    /**
+     * @param args Same as for {@link Solver#main(String[])}. The labyrinth is written to a passage file and
+     * solved with the sequential {@link Solver} and, from that file, with 1, 2, 4, ... up to twice the available cores worker processes, a certain number
+     * of times each, and the median run times (without starting the workers) are printed.
+     */
+    public static void main(String[] args) throws IOException {
+        Labyrinth labyrinth = Solver.makeOrLoadLabyrinth(args);
+        if (labyrinth == null)
+            return;
+        PassageFile.write(labyrinth, PASSAGE_FILE_NAME);
+        long[] runTimes = new long[2*N_RUNS_HALF + 1];
+        for (int run = 0; run < 2*N_RUNS_HALF + 1; ++run) {
+            long startTime = System.currentTimeMillis();
+            new Solver(labyrinth).solve();
+            long endTime = System.currentTimeMillis();
+            runTimes[run] = endTime - startTime;
+        }
+        Arrays.sort(runTimes);
+        long sequential = runTimes[N_RUNS_HALF];
+        System.out.println("Median run time of sequential solver was " + sequential + " ms.");
+
+        int maxWorkers = 2*Runtime.getRuntime().availableProcessors();
+        for (int nWorkers = 1; nWorkers <= maxWorkers; nWorkers *= 2) {
+            long setupStart = System.currentTimeMillis();
+            try (PartitionedSolver solver = new PartitionedSolver(PASSAGE_FILE_NAME, nWorkers)) {
+                long setupTime = System.currentTimeMillis() - setupStart;
+                CompactPath solution = null;
+                for (int run = 0; run < 2*N_RUNS_HALF + 1; ++run) {
+                    long startTime = System.currentTimeMillis();
+                    solution = solver.solve();
+                    long endTime = System.currentTimeMillis();
+                    runTimes[run] = endTime - startTime;
+                }
+                Arrays.sort(runTimes);
+                if (solution == null)
+                    System.out.println("No solution exists.");
+                else
+                    System.out.println("Computed solution of length " + solution.length() + " with " + nWorkers +
+                            " worker process(es) in " + solver.getRounds() + " rounds, median run time " +
+                            runTimes[N_RUNS_HALF] + " ms (speedup " + String.format("%.2f", (double)sequential/Math.max(1, runTimes[N_RUNS_HALF])) +
+                            ", setup " + setupTime + " ms), solution " + (labyrinth.checkSolution(solution) ? "correct :-)" : "incorrect :-("));
+            }
+        }
+    }
+}
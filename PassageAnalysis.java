@@ -0,0 +1,180 @@
+package uebung_parallelisierung.sequentiell;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Per-cell passage degree (number of passages leading out of a cell), dead ends (degree 1) and
+ * junctions (degree 3 or 4) of a labyrinth, computed for 64 cells at a time: the four direction
+ * planes of {@link PassageBitPlanes} are added bitwise with half adders, which yields the degree
+ * as three bit planes per row. Rows are analyzed in parallel.
+ * This is the row-at-once counterpart of calling {@link Labyrinth#isBlindAlley} cell by cell.
+ * It is meant for analysis (counts and masks of dead ends and junctions for statistics and preprocessing
+ * experiments), not as the blind-alley test of the solvers: building it costs time proportional to the
+ * whole labyrinth, and a single lookup needs several array loads, whereas the solvers test only the cells
+ * they visit, with one load each.
+ */
+final class PassageAnalysis {
+
+    private static final int N_RUNS_HALF = 5;  // #runs will be 2*N_RUNS_HALF + 1
+
+    private final PassageBitPlanes planes;
+
+    // Degree of each cell as a binary number with bit planes [y][word] for 1, 2 and 4:
+    private final long[][] degree1;
+    private final long[][] degree2;
+    private final long[][] degree4;
+
+    private final long[][] deadEnds;  // cells with exactly one passage
+    private final long[][] junctions; // cells with at least three passages
+
+    PassageAnalysis(PassageBitPlanes planes) {
+        this.planes = planes;
+        degree1 = new long[planes.height][planes.words];
+        degree2 = new long[planes.height][planes.words];
+        degree4 = new long[planes.height][planes.words];
+        deadEnds = new long[planes.height][planes.words];
+        junctions = new long[planes.height][planes.words];
+
+        IntStream.range(0, planes.height).parallel().forEach(this::analyzeRow);
+    }
+
+    PassageAnalysis(Labyrinth labyrinth) {
+        this(new PassageBitPlanes(labyrinth));
+    }
+
+    private void analyzeRow(int y) {
+        long[] n = planes.row(Direction.N, y);
+        long[] s = planes.row(Direction.S, y);
+        long[] e = planes.row(Direction.E, y);
+        long[] w = planes.row(Direction.W, y);
+        for (int i = 0; i < planes.words; ++i) {
+            // Add the four one-bit numbers n + s + e + w in each bit position:
+            long sumNS = n[i] ^ s[i];
+            long carryNS = n[i] & s[i];
+            long sumEW = e[i] ^ w[i];
+            long carryEW = e[i] & w[i];
+            long bit1 = sumNS ^ sumEW;
+            long carry1 = sumNS & sumEW;
+            long bit2 = carryNS ^ carryEW ^ carry1;
+            long bit4 = (carryNS & carryEW) | ((carryNS ^ carryEW) & carry1);
+
+            degree1[y][i] = bit1;
+            degree2[y][i] = bit2;
+            degree4[y][i] = bit4;
+            deadEnds[y][i] = bit1 & ~bit2 & ~bit4;
+            junctions[y][i] = bit4 | (bit2 & bit1);
+        }
+    }
+
+    int degree(int x, int y) {
+        int i = x >>> 6;
+        long bit = 1L << x;
+        return ((degree1[y][i] & bit) != 0 ? 1 : 0)
+             + ((degree2[y][i] & bit) != 0 ? 2 : 0)
+             + ((degree4[y][i] & bit) != 0 ? 4 : 0);
+    }
+
+    boolean isDeadEnd(int x, int y) {
+        return PassageBitPlanes.isSet(deadEnds[y], x);
+    }
+
+    boolean isJunction(int x, int y) {
+        return PassageBitPlanes.isSet(junctions[y], x);
+    }
+
+    /**
+     * Same as {@link Labyrinth#isBlindAlley}: whether cell (x, y) has no passage except towards <code>fromDir</code>.
+     */
+    boolean isBlindAlley(int x, int y, Direction fromDir) {
+        int i = x >>> 6;
+        long bit = 1L << x;
+        long noPassage = ~(degree1[y][i] | degree2[y][i] | degree4[y][i]);
+        return ((noPassage | (deadEnds[y][i] & planes.row(fromDir, y)[i])) & bit) != 0;
+    }
+
+    /**
+     * @return Returns row <code>y</code> of the dead end bitset (not a copy).
+     */
+    long[] deadEndRow(int y) {
+        return deadEnds[y];
+    }
+
+    /**
+     * @return Returns row <code>y</code> of the junction bitset (not a copy).
+     */
+    long[] junctionRow(int y) {
+        return junctions[y];
+    }
+
+    long countDeadEnds() {
+        return count(deadEnds);
+    }
+
+    long countJunctions() {
+        return count(junctions);
+    }
+
+    private static long count(long[][] bits) {
+        return Arrays.stream(bits).parallel().mapToLong(row -> {
+            long sum = 0;
+            for (long word : row)
+                sum += Long.bitCount(word);
+            return sum;
+        }).sum();
+    }
+
+    /**
+     * Count the dead ends cell by cell, as a solver does with {@link Labyrinth#isBlindAlley}.
+     */
+    static long countDeadEndsScalar(Labyrinth labyrinth) {
+        long count = 0;
+        for (int x = 0; x < labyrinth.getWidth(); ++x) {
+            for (int y = 0; y < labyrinth.getHeight(); ++y) {
+                Point p = new Point(x, y);
+                for (Direction dir : Direction.values()) {
+                    if (labyrinth.hasPassage(p, dir) && labyrinth.isBlindAlley(p, dir)) {
+                        ++count;
+                        break;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param args Same as for {@link Solver#main(String[])}. Dead ends of the labyrinth are counted with the
+     * row-at-once analysis (including building the bit planes) and with the scalar isBlindAlley loop a certain
+     * number of times, and the median run times are printed.
+     */
+    public static void main(String[] args) {
+        Labyrinth labyrinth = Solver.makeOrLoadLabyrinth(args);
+        if (labyrinth == null)
+            return;
+        long[] runTimes = new long[2*N_RUNS_HALF + 1];
+        long[] runTimesScalar = new long[2*N_RUNS_HALF + 1];
+
+        for (int run = 0; run < 2*N_RUNS_HALF + 1; ++run) {
+            long startTime = System.currentTimeMillis();
+            PassageAnalysis analysis = new PassageAnalysis(labyrinth);
+            long deadEnds = analysis.countDeadEnds();
+            long endTime = System.currentTimeMillis();
+            runTimes[run] = endTime - startTime;
+
+            startTime = System.currentTimeMillis();
+            long deadEndsScalar = countDeadEndsScalar(labyrinth);
+            endTime = System.currentTimeMillis();
+            runTimesScalar[run] = endTime - startTime;
+
+            System.out.println("Found " + deadEnds + " dead ends and " + analysis.countJunctions() + " junctions in " +
+                    runTimes[run] + "ms (scalar: " + deadEndsScalar + " dead ends in " + runTimesScalar[run] + "ms).");
+            if (deadEnds != deadEndsScalar)
+                System.out.println("Dead end counts differ :-(");
+        }
+        Arrays.sort(runTimes);
+        Arrays.sort(runTimesScalar);
+        System.out.println("Median run time was " + runTimes[N_RUNS_HALF] + " ms" +
+                " (scalar: " + runTimesScalar[N_RUNS_HALF] + " ms).");
+    }
+}
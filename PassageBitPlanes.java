@@ -0,0 +1,234 @@
+package uebung_parallelisierung.sequentiell;
+
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+/**
+ * The passages of a labyrinth as one bit plane per direction, stored row by row
+ * as bitsets of <code>long</code> words: bit <code>x % 64</code> of word <code>x / 64</code>
+ * in row <code>y</code> of plane <code>d</code> is set iff there is a passage from cell (x, y)
+ * in direction <code>d</code>. This lets search and analysis passes process 64 cells of a row
+ * with one word operation.
+ */
+final class PassageBitPlanes {
+
+    // Compute the rows of one step of a flood fill in parallel only if the frontier touches at least this many rows:
+    private static final int MIN_ROWS_FOR_PARALLEL_STEP = 64;
+
+    final int width;   // total number of cells in x direction
+    final int height;  // total number of cells in y direction
+    final int words;   // number of long words per row
+    final long lastWordMask; // cells of the last word of each row that lie inside the labyrinth
+
+    // planes[direction.ordinal()][y][word]
+    private final long[][][] planes;
+
+    PassageBitPlanes(Labyrinth labyrinth) {
+        width = labyrinth.getWidth();
+        height = labyrinth.getHeight();
+        words = (width + 63) >>> 6;
+        lastWordMask = (width & 63) == 0 ? -1L : (1L << (width & 63)) - 1;
+        planes = new long[Direction.values().length][height][words];
+
+        // Columns of 64 cells (one word) are independent of each other, so they can be filled in parallel.
+        // Within a column, going down row by row reads the passages of its 64 cells sequentially,
+        // whether they are stored by column or by row:
+        long[][] north = planes[Direction.N.ordinal()];
+        long[][] south = planes[Direction.S.ordinal()];
+        long[][] east = planes[Direction.E.ordinal()];
+        long[][] west = planes[Direction.W.ordinal()];
+        IntStream.range(0, words).parallel().forEach(i -> {
+            int x0 = i << 6;
+            int x1 = Math.min(width, x0 + 64);
+            for (int y = 0; y < height; ++y) {
+                long n = 0, s = 0, e = 0, w = 0;
+                for (int x = x0; x < x1; ++x) {
+                    int cell = labyrinth.passagesAt(x, y);
+                    long bit = 1L << x;  // shift distance is taken modulo 64
+                    if ((cell & Direction.N.bit) != 0)
+                        n |= bit;
+                    if ((cell & Direction.S.bit) != 0)
+                        s |= bit;
+                    if ((cell & Direction.E.bit) != 0)
+                        e |= bit;
+                    if ((cell & Direction.W.bit) != 0)
+                        w |= bit;
+                }
+                north[y][i] = n;
+                south[y][i] = s;
+                east[y][i] = e;
+                west[y][i] = w;
+            }
+        });
+    }
+
+    /**
+     * Computes one row of the next frontier of a flood fill (see {@link #floodFill}).
+     */
+    interface RowStep {
+        /**
+         * Compute words <code>fromWord</code> to <code>toWord</code> of row <code>y</code> of <code>next</code>
+         * from the rows <code>y-1</code>, <code>y</code> and <code>y+1</code> of <code>frontier</code> in step
+         * number <code>step</code>; the other words of the row stay 0. Must write only state of row <code>y</code>,
+         * so different rows may be computed concurrently.
+         * @return Returns whether the row of the next frontier is nonempty
+         */
+        boolean step(long[][] frontier, long[][] next, int y, int fromWord, int toWord, int step);
+    }
+
+    /**
+     * Flood fill starting with the frontier {(x, y)}: in each step, <code>rowStep</code> computes the next
+     * frontier from the current one, row by row, until the frontier is empty or <code>done</code> holds.
+     * Only the rows in which the next frontier may have cells (those of the current frontier and their
+     * direct neighbors) are computed, in parallel when there are enough of them, and of these only the words
+     * next to words of the frontier, so a step costs time proportional to the frontier rather than to the
+     * width of the labyrinth.
+     * @return Returns the number of steps made
+     */
+    int floodFill(int x, int y, BooleanSupplier done, RowStep rowStep) {
+        long[][] frontier = new long[height][words]; // cells first reached in the latest step
+        long[][] next = new long[height][words];     // cells first reached in the current step
+        // Words firstWord[y] to lastWord[y] of row y of frontier contain all its cells (none if first > last):
+        int[] firstWord = new int[height];
+        int[] lastWord = new int[height];
+        int[] nextFirstWord = new int[height];
+        int[] nextLastWord = new int[height];
+        Arrays.fill(firstWord, words);
+        Arrays.fill(lastWord, -1);
+        Arrays.fill(nextFirstWord, words);
+        Arrays.fill(nextLastWord, -1);
+        frontier[y][x >>> 6] |= 1L << x;
+        firstWord[y] = lastWord[y] = x >>> 6;
+
+        int[] activeRows = new int[height];    // rows with a nonempty frontier
+        int nActive = 0;
+        activeRows[nActive++] = y;
+        int[] candidateRows = new int[height]; // rows in which the next frontier may have cells
+        int[] rowStamp = new int[height];      // step in which a row was last added to the candidates
+        int step = 0;
+
+        while (nActive > 0 && !done.getAsBoolean()) {
+            ++step;
+
+            // Cells of the next frontier can only lie in active rows or their direct neighbors:
+            int nCandidates = 0;
+            for (int a = 0; a < nActive; ++a) {
+                int row = activeRows[a];
+                for (int c = Math.max(0, row-1); c <= Math.min(height-1, row+1); ++c) {
+                    if (rowStamp[c] != step) {
+                        rowStamp[c] = step;
+                        candidateRows[nCandidates++] = c;
+                    }
+                }
+            }
+
+            if (nCandidates >= MIN_ROWS_FOR_PARALLEL_STEP) {
+                final int currentStep = step;
+                final long[][] from = frontier;
+                final long[][] to = next;
+                final int[] first = firstWord;
+                final int[] last = lastWord;
+                final int[] nextFirst = nextFirstWord;
+                final int[] nextLast = nextLastWord;
+                int[] nonemptyRows = Arrays.stream(candidateRows, 0, nCandidates).parallel()
+                        .filter(row -> stepRow(rowStep, from, to, first, last, nextFirst, nextLast, row, currentStep))
+                        .toArray();
+                nActive = nonemptyRows.length;
+                System.arraycopy(nonemptyRows, 0, activeRows, 0, nActive);
+            } else {
+                nActive = 0;
+                for (int c = 0; c < nCandidates; ++c) {
+                    if (stepRow(rowStep, frontier, next, firstWord, lastWord, nextFirstWord, nextLastWord,
+                                candidateRows[c], step))
+                        activeRows[nActive++] = candidateRows[c];
+                }
+            }
+
+            // The old frontier becomes the array for the step after the next one, so clear it:
+            for (int c = 0; c < nCandidates; ++c) {
+                int row = candidateRows[c];
+                if (firstWord[row] <= lastWord[row]) {
+                    Arrays.fill(frontier[row], firstWord[row], lastWord[row] + 1, 0L);
+                    firstWord[row] = words;
+                    lastWord[row] = -1;
+                }
+            }
+            long[][] swap = frontier;
+            frontier = next;
+            next = swap;
+            int[] swapWords = firstWord;
+            firstWord = nextFirstWord;
+            nextFirstWord = swapWords;
+            swapWords = lastWord;
+            lastWord = nextLastWord;
+            nextLastWord = swapWords;
+        }
+        return step;
+    }
+
+    /**
+     * Compute row <code>y</code> of the next frontier with <code>rowStep</code>, restricted to the words
+     * that can receive cells from the current frontier, and record the words its cells lie in.
+     * @return Returns whether the row of the next frontier is nonempty
+     */
+    private boolean stepRow(RowStep rowStep, long[][] frontier, long[][] next, int[] firstWord, int[] lastWord,
+                            int[] nextFirstWord, int[] nextLastWord, int y, int step) {
+        // Cells move to the word of a neighboring row, or to the same or a neighboring word of the same row:
+        int from = words;
+        int to = -1;
+        if (firstWord[y] <= lastWord[y]) {
+            from = Math.max(0, firstWord[y] - 1);
+            to = Math.min(words - 1, lastWord[y] + 1);
+        }
+        if (y > 0 && firstWord[y-1] <= lastWord[y-1]) {
+            from = Math.min(from, firstWord[y-1]);
+            to = Math.max(to, lastWord[y-1]);
+        }
+        if (y+1 < height && firstWord[y+1] <= lastWord[y+1]) {
+            from = Math.min(from, firstWord[y+1]);
+            to = Math.max(to, lastWord[y+1]);
+        }
+        if (from > to || !rowStep.step(frontier, next, y, from, to, step))
+            return false;
+        long[] nextRow = next[y];
+        while (nextRow[from] == 0)
+            ++from;
+        while (nextRow[to] == 0)
+            --to;
+        nextFirstWord[y] = from;
+        nextLastWord[y] = to;
+        return true;
+    }
+
+    /**
+     * @return Returns row <code>y</code> of the plane for <code>dir</code> (not a copy).
+     */
+    long[] row(Direction dir, int y) {
+        return planes[dir.ordinal()][y];
+    }
+
+    boolean hasPassage(int x, int y, Direction dir) {
+        return (planes[dir.ordinal()][y][x >>> 6] & (1L << x)) != 0;
+    }
+
+    /**
+     * @return Returns <code>word</code> moved one cell to the east, filling its lowest bit from
+     * <code>lowerWord</code>, the word for the 64 cells to the west of it (0 if there is none).
+     */
+    static long shiftEast(long word, long lowerWord) {
+        return (word << 1) | (lowerWord >>> 63);
+    }
+
+    /**
+     * @return Returns <code>word</code> moved one cell to the west, filling its highest bit from
+     * <code>higherWord</code>, the word for the 64 cells to the east of it (0 if there is none).
+     */
+    static long shiftWest(long word, long higherWord) {
+        return (word >>> 1) | (higherWord << 63);
+    }
+
+    static boolean isSet(long[] bits, int x) {
+        return (bits[x >>> 6] & (1L << x)) != 0;
+    }
+}
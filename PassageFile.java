@@ -0,0 +1,125 @@
+package uebung_parallelisierung.sequentiell;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file with the passages of a labyrinth: a header with width, height, start and end (six ints), followed
+ * by the passage bits of the cells in the layout of {@link PackedPassages}, i.e. 4 bits per cell, 16 cells
+ * per <code>long</code>, row by row. Since the rows lie in order, a process can read any band of rows
+ * (mapping just that part of the file into memory) without reading or holding the rest of the labyrinth;
+ * this is how the workers of {@link PartitionedSolver} get their bands.
+ */
+final class PassageFile {
+
+    private static final int HEADER_BYTES = 6*4;
+
+    // Map at most this many words of the file into memory at once (a mapping holds at most 2^31-1 bytes):
+    private static final int MAX_MAPPED_WORDS = 1 << 27;
+
+    private final String fileName;
+    private final int width;
+    private final int height;
+    private final Point start;
+    private final Point end;
+
+    /**
+     * Open the passage file <code>fileName</code>, reading only its header.
+     */
+    PassageFile(String fileName) throws IOException {
+        this.fileName = fileName;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(fileName))) {
+            width = in.readInt();
+            height = in.readInt();
+            start = new Point(in.readInt(), in.readInt());
+            end = new Point(in.readInt(), in.readInt());
+        }
+        if (width <= 0 || height <= 0)
+            throw new IOException(fileName + " is no passage file (size " + width + "x" + height + ")");
+    }
+
+    /**
+     * Write the passages of <code>labyrinth</code> to the file <code>fileName</code>.
+     */
+    static void write(Labyrinth labyrinth, String fileName) throws IOException {
+        int width = labyrinth.getWidth();
+        int height = labyrinth.getHeight();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)))) {
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeInt(labyrinth.getStart().getX());
+            out.writeInt(labyrinth.getStart().getY());
+            out.writeInt(labyrinth.getEnd().getX());
+            out.writeInt(labyrinth.getEnd().getY());
+            // Cell i = y*width+x goes to nibble i%16 of word i/16:
+            long word = 0;
+            int nibble = 0;
+            for (int y = 0; y < height; ++y) {
+                for (int x = 0; x < width; ++x) {
+                    word |= (long)labyrinth.passagesAt(x, y) << (nibble << 2);
+                    if (++nibble == 16) {
+                        out.writeLong(word);
+                        word = 0;
+                        nibble = 0;
+                    }
+                }
+            }
+            if (nibble > 0)
+                out.writeLong(word);
+        }
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    Point getStart() {
+        return start;
+    }
+
+    Point getEnd() {
+        return end;
+    }
+
+    /**
+     * @return Returns the passage bits of rows <code>y0</code> to <code>y1-1</code>, those of cell (x, y)
+     * at index (y-y0)*width+x
+     */
+    byte[] readRows(int y0, int y1) throws IOException {
+        long firstCell = (long)y0*width;
+        long endCell = (long)y1*width;
+        if (endCell - firstCell > Integer.MAX_VALUE - 8)
+            throw new IOException("Rows " + y0 + " to " + (y1-1) + " have too many cells for one array");
+        byte[] passages = new byte[(int)(endCell - firstCell)];
+        long firstWord = firstCell >>> 4;
+        long endWord = (endCell + 15) >>> 4;
+
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            for (long chunk = firstWord; chunk < endWord; chunk += MAX_MAPPED_WORDS) {
+                int nWords = (int)Math.min(MAX_MAPPED_WORDS, endWord - chunk);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + 8*chunk, 8L*nWords);
+                for (int w = 0; w < nWords; ++w) {
+                    long word = buffer.getLong();
+                    long cell = (chunk + w) << 4;
+                    for (int nibble = 0; nibble < 16; ++nibble, ++cell) {
+                        if (firstCell <= cell && cell < endCell)
+                            passages[(int)(cell - firstCell)] = (byte)((word >>> (nibble << 2)) & 0xF);
+                    }
+                }
+            }
+        }
+        return passages;
+    }
+}
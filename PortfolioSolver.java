@@ -0,0 +1,324 @@
+package uebung_parallelisierung.sequentiell;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Runs several depth-first searches like {@link Solver#solve()} concurrently, each probing the
+ * neighbors of a cell in a different order (see {@link Ordering}), and returns the path of the first
+ * one that reaches the end, cancelling the others. Since the run time of one depth-first search depends
+ * heavily on where the end lies relative to its probing order, racing several orders gives a low
+ * run time on all kinds of labyrinths.
+ * Optionally, the searches share their visited cells, so that no cell is explored twice; a search that
+ * finds all its neighbors visited by others then backtracks, and the cells it skipped are explored by
+ * the search that visited them, so the end is still found if it can be reached.
+ */
+final public class PortfolioSolver {
+
+    private static final int N_RUNS_HALF = 5;  // #runs will be 2*N_RUNS_HALF + 1
+
+    /**
+     * The order in which one search probes the neighbors of a cell.
+     */
+    enum Ordering {
+        NSEW, WESN, SNWE, EWNS,  // fixed orders
+        TOWARDS_END,             // neighbors closer to end (by Manhattan distance) first
+        RANDOM;                  // a new random order in each cell
+
+        private static final Direction[][] FIXED = {
+            { Direction.N, Direction.S, Direction.E, Direction.W },
+            { Direction.W, Direction.E, Direction.S, Direction.N },
+            { Direction.S, Direction.N, Direction.W, Direction.E },
+            { Direction.E, Direction.W, Direction.N, Direction.S },
+        };
+
+        /**
+         * Fill <code>dirs</code> with the directions to probe from <code>current</code>, in order.
+         */
+        void order(Point current, Point end, Direction[] dirs, SplittableRandom random) {
+            switch (this) {
+                case TOWARDS_END:
+                    System.arraycopy(Direction.values(), 0, dirs, 0, dirs.length);
+                    // Insertion sort of the four directions by the distance of the neighbor to end:
+                    for (int i = 1; i < dirs.length; ++i) {
+                        Direction dir = dirs[i];
+                        int distance = distanceAfter(current, dir, end);
+                        int j = i;
+                        while (j > 0 && distanceAfter(current, dirs[j-1], end) > distance) {
+                            dirs[j] = dirs[j-1];
+                            --j;
+                        }
+                        dirs[j] = dir;
+                    }
+                    break;
+                case RANDOM:
+                    System.arraycopy(Direction.values(), 0, dirs, 0, dirs.length);
+                    for (int i = dirs.length - 1; i > 0; --i) {
+                        int j = random.nextInt(i + 1);
+                        Direction swap = dirs[i];
+                        dirs[i] = dirs[j];
+                        dirs[j] = swap;
+                    }
+                    break;
+                default:
+                    System.arraycopy(FIXED[ordinal()], 0, dirs, 0, dirs.length);
+            }
+        }
+
+        private static int distanceAfter(Point current, Direction dir, Point end) {
+            return Math.abs(current.getX() + dir.dx - end.getX()) + Math.abs(current.getY() + dir.dy - end.getY());
+        }
+    }
+
+    private final Labyrinth labyrinth;
+    private final Ordering[] orderings;  // one search per ordering
+    private final boolean shareVisited;
+
+    public PortfolioSolver(Labyrinth labyrinth) {
+        this(labyrinth, defaultOrderings(Runtime.getRuntime().availableProcessors()), false);
+    }
+
+    PortfolioSolver(Labyrinth labyrinth, Ordering[] orderings, boolean shareVisited) {
+        this.labyrinth = labyrinth;
+        this.orderings = orderings;
+        this.shareVisited = shareVisited;
+    }
+
+    /**
+     * @return Returns <code>k</code> orderings: towards end first, then the fixed orders, then random ones
+     */
+    static Ordering[] defaultOrderings(int k) {
+        Ordering[] orderings = new Ordering[Math.max(1, k)];
+        Ordering[] preferred = { Ordering.TOWARDS_END, Ordering.NSEW, Ordering.WESN, Ordering.SNWE, Ordering.EWNS };
+        for (int i = 0; i < orderings.length; ++i)
+            orderings[i] = i < preferred.length ? preferred[i] : Ordering.RANDOM;
+        return orderings;
+    }
+
+    /**
+     * The visited cells, either private to one search or shared by all (then updated atomically).
+     */
+    private interface Visited {
+        /**
+         * @return Returns whether <code>p</code> had not been visited before
+         */
+        boolean visit(Point p);
+        boolean visitedBefore(Point p);
+    }
+
+    private static final class PrivateVisited implements Visited {
+        private final boolean[][] visited;
+
+        PrivateVisited(int width, int height) {
+            visited = new boolean[width][height];
+        }
+
+        @Override
+        public boolean visit(Point p) {
+            boolean before = visited[p.getX()][p.getY()];
+            visited[p.getX()][p.getY()] = true;
+            return !before;
+        }
+
+        @Override
+        public boolean visitedBefore(Point p) {
+            return visited[p.getX()][p.getY()];
+        }
+    }
+
+    private static final class SharedVisited implements Visited {
+        private final AtomicLongArray bits;  // bit i%64 of word i/64 for cell i = y*width+x
+        private final int width;
+
+        SharedVisited(int width, int height) {
+            this.width = width;
+            bits = new AtomicLongArray((int)(((long)width*height + 63) >>> 6));
+        }
+
+        @Override
+        public boolean visit(Point p) {
+            int i = p.getY()*width + p.getX();
+            long bit = 1L << i;
+            long word;
+            do {
+                word = bits.get(i >>> 6);
+                if ((word & bit) != 0)
+                    return false;
+            } while (!bits.compareAndSet(i >>> 6, word, word | bit));
+            return true;
+        }
+
+        @Override
+        public boolean visitedBefore(Point p) {
+            int i = p.getY()*width + p.getX();
+            return (bits.get(i >>> 6) & (1L << i)) != 0;
+        }
+    }
+
+    /**
+     * The depth-first search of {@link Solver#solve()}, probing neighbors in the order given by <code>ordering</code>.
+     * @return Returns a path from start to end, or null if none was found or <code>cancelled</code> was set
+     */
+    private Point[] search(Ordering ordering, Visited visited, AtomicBoolean cancelled, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        Point end = labyrinth.getEnd();
+        Direction[] dirs = new Direction[Direction.values().length];
+        Point current = labyrinth.getStart();
+        ArrayDeque<Point> pathSoFar = new ArrayDeque<Point>();  // Path from start to just before current
+        ArrayDeque<PointAndDirection> backtrackStack = new ArrayDeque<PointAndDirection>();
+        visited.visit(current);
+
+        while (!labyrinth.isDestination(current)) {
+            if (cancelled.get())
+                return null;
+            Point next = null;
+
+            ordering.order(current, end, dirs, random);
+            // Use first unvisited neighbor that this search can claim as next cell, push others on the backtrack stack:
+            for (Direction directionToNeighbor: dirs) {
+                Point neighbor = current.getNeighbor(directionToNeighbor);
+                if (   labyrinth.hasPassage(current, directionToNeighbor)
+                    && !visited.visitedBefore(neighbor)
+                    && (   !labyrinth.isBlindAlley(neighbor, directionToNeighbor.opposite)
+                        || labyrinth.isDestination(neighbor))) {
+                    if (next == null) {
+                        if (visited.visit(neighbor)) // else another search has claimed it meanwhile
+                            next = neighbor;
+                    } else {
+                        // Save neighbor as starting cell for a later backtracking (claimed only then):
+                        backtrackStack.push(new PointAndDirection(neighbor, directionToNeighbor.opposite));
+                    }
+                }
+            }
+            // Advance to next cell, if any:
+            if (next != null) {
+                pathSoFar.addLast(current);
+                current = next;
+            } else {
+                // Backtrack to the latest branching point whose saved cell is still unvisited, if any:
+                PointAndDirection pd;
+                do {
+                    if (backtrackStack.isEmpty())
+                        return null; // No more backtracking available: end not reachable for this search
+                    pd = backtrackStack.pop();
+                } while (!visited.visit(pd.getPoint()));
+                current = pd.getPoint();
+                Point branchingPoint = current.getNeighbor(pd.getDirectionToBranchingPoint());
+                // Remove the dead end from the top of pathSoFar, i.e. all cells after branchingPoint:
+                while (!pathSoFar.peekLast().equals(branchingPoint))
+                    pathSoFar.removeLast();
+            }
+        }
+        pathSoFar.addLast(current);
+        return pathSoFar.toArray(new Point[0]);
+    }
+
+    /**
+     * @return Returns a path through the labyrinth from start to end as an array, or null if no solution exists
+     */
+    public Point[] solve() {
+        ExecutorService executor = Executors.newFixedThreadPool(orderings.length);
+        try {
+            return solve(executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Run the searches on <code>executor</code>, which should have a thread for each of them.
+     * @return Returns a path through the labyrinth from start to end as an array, or null if no solution exists
+     */
+    public Point[] solve(ExecutorService executor) {
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        Visited shared = shareVisited ? new SharedVisited(labyrinth.getWidth(), labyrinth.getHeight()) : null;
+        ExecutorCompletionService<Point[]> completion = new ExecutorCompletionService<>(executor);
+        List<Future<Point[]>> futures = new ArrayList<>();
+        for (int i = 0; i < orderings.length; ++i) {
+            Ordering ordering = orderings[i];
+            long seed = i;
+            futures.add(completion.submit(() -> search(ordering,
+                    shared != null ? shared : new PrivateVisited(labyrinth.getWidth(), labyrinth.getHeight()),
+                    cancelled, seed)));
+        }
+        try {
+            // The first non-null result wins; null means that search did not reach end:
+            for (int i = 0; i < orderings.length; ++i) {
+                Point[] solution = completion.take().get();
+                if (solution != null)
+                    return solution;
+            }
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            cancelled.set(true);
+            for (Future<Point[]> future : futures)
+                future.cancel(true);
+        }
+    }
+
+    /**
+     * @param args Same as for {@link Solver#main(String[])}. The labyrinth is solved with this solver (with
+     * private and with shared visited cells) and with the sequential {@link Solver} a certain number of times,
+     * and the median run times are printed.
+     */
+    public static void main(String[] args) {
+        Labyrinth labyrinth = Solver.makeOrLoadLabyrinth(args);
+        if (labyrinth == null)
+            return;
+        int k = Math.max(2, Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(k);
+        long[] runTimes = new long[2*N_RUNS_HALF + 1];
+        long[] runTimesShared = new long[2*N_RUNS_HALF + 1];
+        long[] runTimesSequential = new long[2*N_RUNS_HALF + 1];
+
+        for (int run = 0; run < 2*N_RUNS_HALF + 1; ++run) {
+            long startTime = System.currentTimeMillis();
+            Point[] solution = new PortfolioSolver(labyrinth, defaultOrderings(k), false).solve(executor);
+            long endTime = System.currentTimeMillis();
+            runTimes[run] = endTime - startTime;
+
+            startTime = System.currentTimeMillis();
+            Point[] solutionShared = new PortfolioSolver(labyrinth, defaultOrderings(k), true).solve(executor);
+            endTime = System.currentTimeMillis();
+            runTimesShared[run] = endTime - startTime;
+
+            startTime = System.currentTimeMillis();
+            new Solver(labyrinth).solve();
+            endTime = System.currentTimeMillis();
+            runTimesSequential[run] = endTime - startTime;
+
+            if (solution == null || solutionShared == null)
+                System.out.println("No solution exists.");
+            else {
+                System.out.println("Computed portfolio solution of length " + solution.length + " with " + k + " searches in " +
+                        runTimes[run] + "ms (shared visited cells: " + runTimesShared[run] + "ms, sequential: " +
+                        runTimesSequential[run] + "ms).");
+                if (labyrinth.checkSolution(solution) && labyrinth.checkSolution(solutionShared))
+                    System.out.println("Solutions correct :-)");
+                else
+                    System.out.println("Solutions incorrect :-(");
+            }
+        }
+        executor.shutdownNow();
+        Arrays.sort(runTimes);
+        Arrays.sort(runTimesShared);
+        Arrays.sort(runTimesSequential);
+        System.out.println("Median run time was " + runTimes[N_RUNS_HALF] + " ms (shared visited cells: " +
+                runTimesShared[N_RUNS_HALF] + " ms, sequential: " + runTimesSequential[N_RUNS_HALF] + " ms).");
+    }
+}
@@ -6,10 +6,14 @@ import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.GridLayout;
 
+import java.io.BufferedWriter;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 
 import java.util.ArrayDeque;
 import java.util.Arrays;
@@ -30,14 +34,27 @@ final public class Solver extends JPanel  {
 	
 	// The grid defining the structure of the labyrinth
 	private final Labyrinth labyrinth;
+
+	// Whether solve() first checks with Connectivity that end can be reached at all:
+	private final boolean checkConnectivity;
 	
 	// For each cell in the labyrinth: Has solve() visited it yet?
 	private boolean[][] visited; // initialized in solve()
 	
 	private Point[] solution = null; // set to solution path once that has been computed
+	private CompactPath compactSolution = null; // alternatively set to a compact solution path for display
 
 	public Solver(Labyrinth labyrinth) {
-		this.labyrinth = labyrinth; 
+		this(labyrinth, false);
+	}
+
+	/**
+	 * If <code>checkConnectivity</code>, solve() returns null right away when start and end lie in different
+	 * components (see {@link Connectivity}) instead of first searching all cells reachable from start.
+	 */
+	public Solver(Labyrinth labyrinth, boolean checkConnectivity) {
+		this.labyrinth = labyrinth;
+		this.checkConnectivity = checkConnectivity;
 	}
 	
     public Solver(int width, int height) {
@@ -57,6 +74,9 @@ final public class Solver extends JPanel  {
 	 */
 	public Point[] solve() {
 
+		if (checkConnectivity && !Connectivity.of(labyrinth).startConnectedToEnd())
+			return null; // end cannot be reached: No solution exists
+
 		// Initialize the search state: This must be done here to be part of the timing measurement
 		
 		Point current = labyrinth.getStart();
@@ -124,9 +144,10 @@ final public class Solver extends JPanel  {
 		graphics.fillRect(0, 0, labyrinth.getWidth()*labyrinth.cell_size_pixels(), labyrinth.getHeight()*labyrinth.cell_size_pixels());
 		
 		// draw solution path, if available
-		if (solution  != null) {
+		Iterable<Point> solutionPath = solution != null ? Arrays.asList(solution) : compactSolution;
+		if (solutionPath  != null) {
 			graphics.setColor(Color.YELLOW);
-			for (Point p: solution)
+			for (Point p: solutionPath)
 /*				// fill only white area between the walls instead of whole cell:
 				graphics.fillRect(p.getX()*CELL_PX+HALF_WALL_PX, p.getY()*CELL_PX+HALF_WALL_PX, 
 											CELL_PX-2*HALF_WALL_PX, CELL_PX-2*HALF_WALL_PX); 
@@ -139,53 +160,94 @@ final public class Solver extends JPanel  {
 	}
 
 	public void printSolution() {
-		System.out.print("Solution: ");
-		for (Point p: solution)
-			System.out.print(p);
-		System.out.println();
+		// Collect the output in a buffer instead of printing each cell separately:
+		PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)));
+		out.print("Solution: ");
+		if (solution != null) {
+			for (Point p: solution)
+				out.print(p);
+		} else if (compactSolution != null) {
+			try {
+				compactSolution.writeText(out);
+			} catch (IOException e) { // PrintWriter does not throw IOException
+				System.out.println(e);
+			}
+		}
+		out.println();
+		out.flush();
 	}
 	
 	public void displaySolution() {
 		repaint();
 }
+
+	void displaySolution(CompactPath path) {
+		solution = null;
+		compactSolution = path;
+		repaint();
+	}
+
+	/**
+	 * Display <code>labyrinth</code> with <code>path</code> and print the path, unless the labyrinth is too large.
+	 * For solvers that produce a CompactPath.
+	 */
+	static void displaySolution(Labyrinth labyrinth, CompactPath path) {
+		if (!labyrinth.smallEnoughToDisplay())
+			return;
+		Solver solver = new Solver(labyrinth);
+		displayLabyrinth(solver);
+		solver.displaySolution(path);
+		solver.printSolution();
+	}
 	
-private static Solver makeAndSaveSolver(String[] args) {
-	
-	// Construct solver: Either read it from a file, or create a new one
+/**
+ * Read the labyrinth from the file named by the first argument if that ends in .ser; else create a new,
+ * random labyrinth with the optional width and height given by the first two arguments and save it to
+ * labyrinth.ser (may be reused in future program executions).
+ * @return Returns the labyrinth, or null if it could not be read
+ */
+static Labyrinth makeOrLoadLabyrinth(String[] args) {
 	if (args.length >= 1 && args[0].endsWith(".ser")) {  
 		
 		// 1st argument is name of file with serialized labyrinth: Ignore other arguments
-		// and create a solver for the labyrinth from that file:
+		// and read the labyrinth from that file:
 		ObjectInputStream ois;
 		try {
 			ois = new ObjectInputStream(new FileInputStream(args[0]));
 			Labyrinth labyrinth = (Labyrinth)ois.readObject();
 			ois.close();
-			return new Solver(labyrinth);
+			return labyrinth;
 		} catch (Exception e) {
 			System.out.println(e);
 			return null;
 		}
 	} else {
-		// Create solver for new, random labyrinth:
+		// Create new, random labyrinth:
 		
 		int width = args.length >= 1 ? (Integer.parseInt(args[0])) : DEFAULT_WIDTH_IN_CELLS;
 		int height = args.length >= 2 ? (Integer.parseInt(args[1])) : DEFAULT_HEIGHT_IN_CELLS;
 		
-		Solver solver = new Solver(width, height);
+		Labyrinth labyrinth = new Labyrinth(width, height);
 
 		// Save labyrinth to file (may be reused in future program executions):
 		try {
 			ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream("labyrinth.ser"));
-			oos.writeObject(solver.labyrinth);
+			oos.writeObject(labyrinth);
 			oos.close();
 		} catch (Exception e) {
 			System.out.println(e);
 		}
 			
-		return solver;
+		return labyrinth;
 	}
 }
+	
+private static Solver makeAndSaveSolver(String[] args) {
+	
+	// Construct solver: Either read its labyrinth from a file, or create a new one
+	Labyrinth labyrinth = makeOrLoadLabyrinth(args);
+	return labyrinth == null ? null : new Solver(labyrinth);
+}
 
 
 private static void displayLabyrinth(Solver solver) {
@@ -0,0 +1,307 @@
+package uebung_parallelisierung.sequentiell;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Solves a labyrinth in three parallel phases over a partition of the grid into square tiles:
+ * <ol>
+ * <li>Each tile labels the connected components of its cells using only its own passages, and
+ *     records the component of each cell on its border (and of start and end, if inside).</li>
+ * <li>The components are nodes of a much smaller graph, connected by the passages between
+ *     neighboring tiles; a breadth-first search in this graph finds the sequence of tiles and
+ *     border crossings leading from start to end.</li>
+ * <li>The segments of the path inside each tile on that route are expanded by tile-local
+ *     searches (see {@link GridPartition#shortestPath}), independently of each other.</li>
+ * </ol>
+ * Phases 1 and 3 do almost all of the work and scale with the number of cores, unlike the
+ * frontier of a single depth-first search (see {@link SolverP}).
+ * Components are labeled by following passages, which finds the connectivity exactly for two-way
+ * passages (as generated by {@link Labyrinth}); should a segment nevertheless fail to expand
+ * because of one-way passages, the labyrinth is solved sequentially instead.
+ */
+final public class TileSolver {
+
+    static final int DEFAULT_TILE_SIZE = 64;
+
+    private static final int N_RUNS_HALF = 5;  // #runs will be 2*N_RUNS_HALF + 1
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final Labyrinth labyrinth;
+    private final GridPartition grid;  // the tiles are the blocks of this partition
+
+    /**
+     * Result of phase 1 for one tile.
+     */
+    private static final class Tile {
+        final int nComponents;
+        final int[] borderCells;     // cell indices y*width+x of the cells on the tile border, sorted
+        final int[] borderComponent; // component of each border cell
+        final int startComponent;    // component of start, or -1 if start is not in the tile
+        final int endComponent;      // component of end, or -1 if end is not in the tile
+
+        Tile(int nComponents, int[] borderCells, int[] borderComponent, int startComponent, int endComponent) {
+            this.nComponents = nComponents;
+            this.borderCells = borderCells;
+            this.borderComponent = borderComponent;
+            this.startComponent = startComponent;
+            this.endComponent = endComponent;
+        }
+
+        int componentOf(int cell) {
+            return borderComponent[Arrays.binarySearch(borderCells, cell)];
+        }
+    }
+
+    public TileSolver(Labyrinth labyrinth) {
+        this(labyrinth, DEFAULT_TILE_SIZE);
+    }
+
+    public TileSolver(Labyrinth labyrinth, int tileSize) {
+        this.labyrinth = labyrinth;
+        grid = new GridPartition(labyrinth, tileSize);
+    }
+
+    /**
+     * Solve with the parallel streams running in <code>pool</code>.
+     * @return Returns a path through the labyrinth from start to end, or null if no solution exists
+     */
+    public CompactPath solve(ForkJoinPool pool) {
+        return pool.submit(() -> solve()).join();
+    }
+
+    /**
+     * @return Returns a path through the labyrinth from start to end, or null if no solution exists
+     */
+    public CompactPath solve() {
+        int nTiles = grid.blockCount();
+        int startCell = labyrinth.getStart().getY()*grid.width + labyrinth.getStart().getX();
+        int endCell = labyrinth.getEnd().getY()*grid.width + labyrinth.getEnd().getX();
+
+        // Phase 1: Components of all tiles in parallel:
+        Tile[] tiles = IntStream.range(0, nTiles).parallel()
+                .mapToObj(t -> labelTile(t, startCell, endCell))
+                .toArray(Tile[]::new);
+
+        // Phase 2: Graph of components, connected by passages between tiles. Component c of tile t is
+        // node componentBase[t]+c; the edges are collected per tile (in parallel), then merged.
+        int[] componentBase = new int[nTiles + 1];
+        for (int t = 0; t < nTiles; ++t)
+            componentBase[t+1] = componentBase[t] + tiles[t].nComponents;
+        int nNodes = componentBase[nTiles];
+        long[][] tileEdges = IntStream.range(0, nTiles).parallel()
+                .mapToObj(t -> crossings(t, tiles, componentBase))
+                .toArray(long[][]::new);
+        int[] edgeStart = new int[nNodes + 1]; // edges from node n are edgeStart[n] to edgeStart[n+1]-1
+        for (long[] edges : tileEdges) {
+            for (int e = 0; e < edges.length; e += 2)
+                ++edgeStart[(int)(edges[e] >>> 32) + 1];
+        }
+        for (int n = 0; n < nNodes; ++n)
+            edgeStart[n+1] += edgeStart[n];
+        int[] edgeSource = new int[edgeStart[nNodes]];
+        int[] edgeTarget = new int[edgeStart[nNodes]];
+        int[] edgeCell = new int[edgeStart[nNodes]];     // cell from which the edge's passage leaves its tile
+        byte[] edgeMove = new byte[edgeStart[nNodes]];   // direction of that passage
+        int[] fill = Arrays.copyOf(edgeStart, nNodes);
+        for (long[] edges : tileEdges) {
+            for (int e = 0; e < edges.length; e += 2) {
+                int i = fill[(int)(edges[e] >>> 32)]++;
+                edgeSource[i] = (int)(edges[e] >>> 32);
+                edgeTarget[i] = (int)edges[e];
+                edgeCell[i] = (int)(edges[e+1] >>> 8);
+                edgeMove[i] = (byte)edges[e+1];
+            }
+        }
+
+        int startNode = componentBase[grid.blockOf(startCell)] + tiles[grid.blockOf(startCell)].startComponent;
+        int endNode = componentBase[grid.blockOf(endCell)] + tiles[grid.blockOf(endCell)].endComponent;
+        int[] parentEdge = new int[nNodes];  // edge over which a node was reached, -1 if not yet
+        Arrays.fill(parentEdge, -1);
+        int[] queue = new int[nNodes];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = startNode;
+        boolean found = startNode == endNode;
+        while (head < tail && !found) {
+            int node = queue[head++];
+            for (int e = edgeStart[node]; e < edgeStart[node+1]; ++e) {
+                int next = edgeTarget[e];
+                if (next != startNode && parentEdge[next] < 0) {
+                    parentEdge[next] = e;
+                    queue[tail++] = next;
+                    found |= next == endNode;
+                }
+            }
+        }
+        if (!found)
+            return null;
+
+        // The border crossings on the route, in order from start to end:
+        int routeLength = 0;
+        for (int node = endNode; node != startNode; node = edgeSource[parentEdge[node]])
+            ++routeLength;
+        final int nCrossings = routeLength;
+        int[] crossings = new int[nCrossings];
+        for (int node = endNode, i = nCrossings - 1; node != startNode; node = edgeSource[parentEdge[node]], --i)
+            crossings[i] = parentEdge[node];
+
+        // Phase 3: Expand the segment inside each tile on the route in parallel. Segment i leads to the
+        // cell where crossing i leaves its tile (or to end for the last one):
+        byte[][] segments = IntStream.range(0, nCrossings + 1).parallel().mapToObj(i -> {
+            int from = i == 0 ? startCell : grid.neighborCell(edgeCell[crossings[i-1]], DIRECTIONS[edgeMove[crossings[i-1]]]);
+            int to = i == nCrossings ? endCell : edgeCell[crossings[i]];
+            return grid.shortestPath(grid.blockOf(from), from, to);
+        }).toArray(byte[][]::new);
+
+        int nMoves = nCrossings;
+        for (byte[] segment : segments) {
+            if (segment == null) { // only possible with one-way passages
+                Point[] solution = new Solver(labyrinth).solve();
+                return solution == null ? null : CompactPath.fromPoints(solution);
+            }
+            nMoves += segment.length;
+        }
+        CompactPath path = new CompactPath(labyrinth.getStart(), nMoves);
+        for (int i = 0; i <= nCrossings; ++i) {
+            for (byte move : segments[i])
+                path.add(DIRECTIONS[move]);
+            if (i < nCrossings)
+                path.add(DIRECTIONS[edgeMove[crossings[i]]]);
+        }
+        return path;
+    }
+
+    /**
+     * Phase 1 for tile <code>t</code>: Label its components by searches following the passages inside the tile.
+     */
+    private Tile labelTile(int t, int startCell, int endCell) {
+        int width = grid.width;
+        int x0 = grid.x0(t);
+        int y0 = grid.y0(t);
+        int x1 = grid.x1(t);
+        int y1 = grid.y1(t);
+        int tileWidth = x1 - x0;
+        int[] component = new int[tileWidth*(y1-y0)];  // by local index, -1 if not labeled yet
+        Arrays.fill(component, -1);
+        int[] stack = new int[component.length];
+        int nComponents = 0;
+
+        for (int local = 0; local < component.length; ++local) {
+            if (component[local] >= 0)
+                continue;
+            component[local] = nComponents;
+            int top = 0;
+            stack[top++] = (y0 + local / tileWidth)*width + x0 + local % tileWidth;
+            while (top > 0) {
+                int cell = stack[--top];
+                for (Direction dir : DIRECTIONS) {
+                    if (!grid.hasNeighbor(cell, dir) || !grid.hasPassage(cell, dir))
+                        continue;
+                    int neighbor = grid.neighborCell(cell, dir);
+                    int nx = neighbor % width;
+                    int ny = neighbor / width;
+                    if (nx < x0 || nx >= x1 || ny < y0 || ny >= y1)
+                        continue;
+                    int neighborLocal = (ny - y0)*tileWidth + (nx - x0);
+                    if (component[neighborLocal] < 0) {
+                        component[neighborLocal] = nComponents;
+                        stack[top++] = neighbor;
+                    }
+                }
+            }
+            ++nComponents;
+        }
+
+        // Border cells in row-major order, i.e. sorted by cell index:
+        int[] borderCells = new int[2*tileWidth + 2*(y1-y0)];
+        int[] borderComponent = new int[borderCells.length];
+        int nBorder = 0;
+        for (int y = y0; y < y1; ++y) {
+            for (int x = x0; x < x1; ++x) {
+                if (y == y0 || y == y1-1 || x == x0 || x == x1-1) {
+                    borderCells[nBorder] = y*width + x;
+                    borderComponent[nBorder++] = component[(y - y0)*tileWidth + (x - x0)];
+                } else {
+                    x = x1 - 2; // skip the interior of the row
+                }
+            }
+        }
+        return new Tile(nComponents, Arrays.copyOf(borderCells, nBorder), Arrays.copyOf(borderComponent, nBorder),
+                        grid.blockOf(startCell) == t ? component[grid.localIndex(t, startCell)] : -1,
+                        grid.blockOf(endCell) == t ? component[grid.localIndex(t, endCell)] : -1);
+    }
+
+    /**
+     * Phase 2 for tile <code>t</code>: The passages leaving the tile as pairs of longs
+     * (source node in high and target node in low 32 bits, then cell in high and direction in low 8 bits).
+     */
+    private long[] crossings(int t, Tile[] tiles, int[] componentBase) {
+        Tile tile = tiles[t];
+        long[] edges = new long[2*4*tile.borderCells.length];
+        int nEdges = 0;
+        for (int b = 0; b < tile.borderCells.length; ++b) {
+            int cell = tile.borderCells[b];
+            for (Direction dir : DIRECTIONS) {
+                if (!grid.hasNeighbor(cell, dir) || !grid.hasPassage(cell, dir))
+                    continue;
+                int neighbor = grid.neighborCell(cell, dir);
+                int neighborTile = grid.blockOf(neighbor);
+                if (neighborTile == t)
+                    continue;
+                long source = componentBase[t] + tile.borderComponent[b];
+                long target = componentBase[neighborTile] + tiles[neighborTile].componentOf(neighbor);
+                edges[nEdges++] = (source << 32) | target;
+                edges[nEdges++] = ((long)cell << 8) | dir.ordinal();
+            }
+        }
+        return Arrays.copyOf(edges, nEdges);
+    }
+
+    /**
+     * @param args Same as for {@link Solver#main(String[])}. The labyrinth is solved with this solver using
+     * 1, 2, 4, ... up to all available cores, and with the sequential {@link Solver}, a certain number of times
+     * each, and the median run times are printed. The solution is displayed (unless the labyrinth is too large).
+     */
+    public static void main(String[] args) {
+        Labyrinth labyrinth = Solver.makeOrLoadLabyrinth(args);
+        if (labyrinth == null)
+            return;
+        TileSolver solver = new TileSolver(labyrinth);
+
+        long[] runTimes = new long[2*N_RUNS_HALF + 1];
+        for (int run = 0; run < 2*N_RUNS_HALF + 1; ++run) {
+            long startTime = System.currentTimeMillis();
+            new Solver(labyrinth).solve();
+            long endTime = System.currentTimeMillis();
+            runTimes[run] = endTime - startTime;
+        }
+        Arrays.sort(runTimes);
+        System.out.println("Median run time of sequential solver was " + runTimes[N_RUNS_HALF] + " ms.");
+
+        int maxCores = Runtime.getRuntime().availableProcessors();
+        for (int cores = 1; cores <= maxCores; cores = cores < maxCores ? Math.min(2*cores, maxCores) : cores + 1) {
+            ForkJoinPool pool = new ForkJoinPool(cores);
+            CompactPath solution = null;
+            for (int run = 0; run < 2*N_RUNS_HALF + 1; ++run) {
+                long startTime = System.currentTimeMillis();
+                solution = solver.solve(pool);
+                long endTime = System.currentTimeMillis();
+                runTimes[run] = endTime - startTime;
+            }
+            pool.shutdown();
+            Arrays.sort(runTimes);
+            if (solution == null)
+                System.out.println("No solution exists.");
+            else {
+                if (cores == 1)
+                    Solver.displaySolution(labyrinth, solution);
+                System.out.println("Computed tile-partitioned solution of length " + solution.length() + " to labyrinth of size " +
+                        labyrinth.getWidth() + "x" + labyrinth.getHeight() + " with " + cores + " cores, median run time " +
+                        runTimes[N_RUNS_HALF] + " ms, solution " + (labyrinth.checkSolution(solution) ? "correct :-)" : "incorrect :-("));
+            }
+        }
+    }
+}